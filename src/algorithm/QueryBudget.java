@@ -0,0 +1,102 @@
+package algorithm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Limit of a query in wall-clock time and in connections scanned, shared by the threads working on the query.
+// The connection scans spend it every CHECK_INTERVAL connections and stop once it is exhausted, their labels being then incomplete
+public class QueryBudget {
+
+    public static final int CHECK_INTERVAL = 1024;
+
+    private final QueryBudget query;
+    private final long deadline;
+    private final boolean timed;
+    private final AtomicLong remainingConnections;
+    private volatile boolean exhausted;
+
+    private QueryBudget(long millis, long connections) {
+        this.query = null;
+        this.timed = millis != Long.MAX_VALUE;
+        this.deadline = this.timed ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis) : 0;
+        this.remainingConnections = new AtomicLong(connections);
+    }
+
+    // Budget of a task done in advance for the query, which may not be used : it stops at the deadline of the query but its
+    // connections are only spent by the query when charged, and it can be cancelled without exhausting the budget of the query
+    private QueryBudget(QueryBudget query) {
+        this.query = query;
+        this.timed = false;
+        this.deadline = 0;
+        this.remainingConnections = new AtomicLong(Long.MAX_VALUE);
+    }
+
+    // Budget ending the given number of milliseconds from now
+    public static QueryBudget ofMillis(long millis) {
+        return new QueryBudget(millis, Long.MAX_VALUE);
+    }
+
+    public static QueryBudget ofConnections(long connections) {
+        return new QueryBudget(Long.MAX_VALUE, connections);
+    }
+
+    public static QueryBudget of(long millis, long connections) {
+        return new QueryBudget(millis, connections);
+    }
+
+    public static QueryBudget unlimited() {
+        return new QueryBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public QueryBudget newTask() {
+        return new QueryBudget(this);
+    }
+
+    // Records the scan of the connections, false once the deadline is passed or the connections are spent
+    public boolean spend(int connections) {
+        if (exhausted) {
+            return false;
+        }
+
+        if (query != null && (query.exhausted || query.isPastDeadline())) {
+            exhausted = true;
+            return false;
+        }
+
+        return spendConnections(connections);
+    }
+
+    // Spends the connections scanned by the task once its result is used, false if the task was stopped or if the budget is
+    // exhausted by them, the result being then discarded as the one of a scan stopped on this budget
+    public boolean charge(QueryBudget task) {
+        if (task.exhausted) {
+            exhausted = true;
+            return false;
+        }
+
+        return !exhausted && spendConnections(Long.MAX_VALUE - task.remainingConnections.get());
+    }
+
+    private boolean spendConnections(long connections) {
+        if (remainingConnections.addAndGet(-connections) < 0 || isPastDeadline()) {
+            exhausted = true;
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean isPastDeadline() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    // The scans spending the budget stop at their next check
+    public void cancel() {
+        exhausted = true;
+    }
+
+    // True once a scan has been stopped, the results computed since are not to be used
+    public boolean isExhausted() {
+        return exhausted;
+    }
+}
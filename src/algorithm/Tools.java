@@ -6,7 +6,6 @@ import tools.Pair;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class Tools {
 
@@ -70,6 +69,31 @@ public class Tools {
     }
 
 
+    public static int connectionBinarySearch(ConnectionTable connections, int hour, int minute) {
+        return connectionBinarySearch(connections, hour * 3600 + minute * 60 - 1);
+    }
+
+
+    // Same result as the search on the connection list, the connections being sorted by departure time
+    public static int connectionBinarySearch(ConnectionTable connections, int departureTime) {
+        int updatedDepartureTime = departureTime - 1;
+        int[] departureSeconds = connections.getDepartureSeconds();
+        int low = 0;
+        int high = departureSeconds.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (departureSeconds[mid] <= updatedDepartureTime)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+
+        return Math.min(low, departureSeconds.length - 1);
+    }
+
+
     private static int connectionBinarySearch(List<Connection> timetables, Connection key) {
         int low = 0;
         int high = timetables.size() - 1;
@@ -96,8 +120,7 @@ public class Tools {
         boolean possibleAtStart = true;
         boolean possibleAtEnd = true;
 
-        List<StopPoint> startStopPoints = network.getFootPaths().get(start.getPosition()).stream().map(FootPath::getTo).collect(Collectors.toList());
-        startStopPoints.add(start);
+        List<StopPoint> startStopPoints = walkableStopPoints(network, start);
         for (StopPoint stopPoint : startStopPoints) {
             for (Pair<Destination, Integer> destination : stopPoint.getDestinations()) {
                 for (Trip trip : destination.getLeft().getTrips()) {
@@ -106,8 +129,7 @@ public class Tools {
             }
         }
 
-        List<StopPoint> endStopPoints = network.getFootPaths().get(end.getPosition()).stream().map(FootPath::getTo).collect(Collectors.toList());
-        endStopPoints.add(end);
+        List<StopPoint> endStopPoints = walkableStopPoints(network, end);
         for (StopPoint stopPoint : endStopPoints) {
             for (Pair<Destination, Integer> destination : stopPoint.getDestinations()) {
                 for (Trip trip : destination.getLeft().getTrips()) {
@@ -118,4 +140,19 @@ public class Tools {
 
         return !(possibleAtStart || possibleAtEnd);
     }
+
+
+    // Stop points reached by a foot path from the stop point, followed by the stop point itself
+    private static List<StopPoint> walkableStopPoints(PublicTransitNetwork network, StopPoint stopPoint) {
+
+        FootPathTable footPaths = network.getFootPathTable();
+        List<StopPoint> stopPoints = new ArrayList<>();
+
+        for (int k = footPaths.getOffsets()[stopPoint.getPosition()]; k < footPaths.getOffsets()[stopPoint.getPosition() + 1]; k++) {
+            stopPoints.add(network.getStopPoints().get(footPaths.getTargets()[k]));
+        }
+        stopPoints.add(stopPoint);
+
+        return stopPoints;
+    }
 }
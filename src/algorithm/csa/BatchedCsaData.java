@@ -0,0 +1,213 @@
+package algorithm.csa;
+
+import algorithm.Tools;
+import network.PublicTransitNetwork;
+import tools.IndexSet;
+import tools.IntList;
+
+import java.util.*;
+
+// Scratch state of BatchedCsaForKssp, kept by thread and reused from one batch to the next as CsaData.
+// The labels are stored lane after lane (stop * capacity + lane), and the stops, trips and forbidden elements touched by
+// a batch are recorded so that only them are reset before the next batch of the thread
+class BatchedCsaData {
+
+    private static final ThreadLocal<BatchedCsaData> WORKSPACES = new ThreadLocal<>();
+
+    private PublicTransitNetwork network;
+    private int capacity;
+
+    // Lanes in which a stop point, a connection, a trip or a foot path is forbidden
+    private long[] forbiddenStopLanes;
+    private long[] forbiddenConnectionLanes;
+    private long[] forbiddenTripLanes;
+    private long[] forbiddenFootPathLanes;
+    private IntList forbiddenStops = new IntList();
+    private IntList forbiddenConnections = new IntList();
+    private IntList forbiddenTrips = new IntList();
+    private IntList forbiddenFootPaths = new IntList();
+
+    private int[] earliestArrivals;
+    private int[] enterConnections;
+    private int[] exitConnections;
+    private int[] footPathIndices;
+    private int[] pointerTrips;
+    private int[] usedTripsWithPointers;
+    private IndexSet touchedStopSet;
+    private IntList touchedStops = new IntList();
+    private IndexSet touchedTripSet;
+    private IntList touchedTrips = new IntList();
+
+    private BatchedCsaData(PublicTransitNetwork network, int capacity) {
+        int stopCount = network.getStopPoints().size();
+        int tripCount = network.getTrips().size();
+
+        this.network = network;
+        this.capacity = capacity;
+
+        this.forbiddenStopLanes = new long[stopCount];
+        this.forbiddenConnectionLanes = new long[network.getConnectionTable().size()];
+        this.forbiddenTripLanes = new long[tripCount];
+        this.forbiddenFootPathLanes = new long[network.getFootPathTable().size()];
+
+        this.earliestArrivals = new int[stopCount * capacity];
+        this.enterConnections = new int[stopCount * capacity];
+        this.exitConnections = new int[stopCount * capacity];
+        this.footPathIndices = new int[stopCount * capacity];
+        this.pointerTrips = new int[stopCount * capacity];
+        this.usedTripsWithPointers = new int[tripCount * capacity];
+        Arrays.fill(this.earliestArrivals, Tools.MAX_ARRIVAL_TIME);
+        Arrays.fill(this.enterConnections, -1);
+        Arrays.fill(this.exitConnections, -1);
+        Arrays.fill(this.footPathIndices, -1);
+        Arrays.fill(this.pointerTrips, -1);
+        Arrays.fill(this.usedTripsWithPointers, -1);
+        this.touchedStopSet = new IndexSet(stopCount);
+        this.touchedTripSet = new IndexSet(tripCount);
+    }
+
+    // Workspace of the current thread for the network and the number of lanes, reset to its initial state
+    static BatchedCsaData acquire(PublicTransitNetwork network, int capacity) {
+        BatchedCsaData data = WORKSPACES.get();
+
+        if (data == null || data.network != network || data.capacity != capacity) {
+            data = new BatchedCsaData(network, capacity);
+            WORKSPACES.set(data);
+        } else {
+            data.reset();
+        }
+
+        return data;
+    }
+
+    // Removes the labels and the forbidden elements of the batch
+    void reset() {
+        resetLabels();
+
+        unforbid(forbiddenStopLanes, forbiddenStops);
+        unforbid(forbiddenConnectionLanes, forbiddenConnections);
+        unforbid(forbiddenTripLanes, forbiddenTrips);
+        unforbid(forbiddenFootPathLanes, forbiddenFootPaths);
+    }
+
+    private void unforbid(long[] lanes, IntList touched) {
+        for (int i = 0; i < touched.size(); i++) {
+            lanes[touched.get(i)] = 0;
+        }
+        touched.clear();
+    }
+
+    // Removes the labels of the last launch, the forbidden elements being kept
+    void resetLabels() {
+        for (int i = 0; i < touchedStops.size(); i++) {
+            int from = touchedStops.get(i) * capacity;
+            Arrays.fill(earliestArrivals, from, from + capacity, Tools.MAX_ARRIVAL_TIME);
+            Arrays.fill(enterConnections, from, from + capacity, -1);
+            Arrays.fill(exitConnections, from, from + capacity, -1);
+            Arrays.fill(footPathIndices, from, from + capacity, -1);
+            Arrays.fill(pointerTrips, from, from + capacity, -1);
+        }
+
+        for (int i = 0; i < touchedTrips.size(); i++) {
+            int from = touchedTrips.get(i) * capacity;
+            Arrays.fill(usedTripsWithPointers, from, from + capacity, -1);
+        }
+
+        touchedStops.clear();
+        touchedStopSet.clear();
+        touchedTrips.clear();
+        touchedTripSet.clear();
+    }
+
+    // Forbids the elements in the lane of the bit, the indices being in the stop points, the connection table, the trips
+    // or the foot path table of the network
+    void forbidStops(IntList indices, long bit) {
+        forbid(forbiddenStopLanes, forbiddenStops, indices, bit);
+    }
+
+    void forbidConnections(IntList indices, long bit) {
+        forbid(forbiddenConnectionLanes, forbiddenConnections, indices, bit);
+    }
+
+    void forbidTrips(IntList indices, long bit) {
+        forbid(forbiddenTripLanes, forbiddenTrips, indices, bit);
+    }
+
+    void forbidFootPaths(IntList indices, long bit) {
+        forbid(forbiddenFootPathLanes, forbiddenFootPaths, indices, bit);
+    }
+
+    private void forbid(long[] lanes, IntList touched, IntList indices, long bit) {
+        for (int i = 0; i < indices.size(); i++) {
+            int index = indices.get(i);
+
+            if (lanes[index] == 0) {
+                touched.add(index);
+            }
+            lanes[index] |= bit;
+        }
+    }
+
+    // Records a stop whose labels are about to change
+    void markStop(int stopPosition) {
+        if (!touchedStopSet.contains(stopPosition)) {
+            touchedStopSet.add(stopPosition);
+            touchedStops.add(stopPosition);
+        }
+    }
+
+    // Records a trip whose pointers are about to change
+    void markTrip(int tripIndex) {
+        if (!touchedTripSet.contains(tripIndex)) {
+            touchedTripSet.add(tripIndex);
+            touchedTrips.add(tripIndex);
+        }
+    }
+
+    void setPointer(int label, int enterConnection, int exitConnection, int footPathIndex, int tripIndex) {
+        enterConnections[label] = enterConnection;
+        exitConnections[label] = exitConnection;
+        footPathIndices[label] = footPathIndex;
+        pointerTrips[label] = tripIndex;
+    }
+
+    long[] getForbiddenStopLanes() {
+        return forbiddenStopLanes;
+    }
+
+    long[] getForbiddenConnectionLanes() {
+        return forbiddenConnectionLanes;
+    }
+
+    long[] getForbiddenTripLanes() {
+        return forbiddenTripLanes;
+    }
+
+    long[] getForbiddenFootPathLanes() {
+        return forbiddenFootPathLanes;
+    }
+
+    int[] getEarliestArrivals() {
+        return earliestArrivals;
+    }
+
+    int[] getUsedTripsWithPointers() {
+        return usedTripsWithPointers;
+    }
+
+    int[] getEnterConnections() {
+        return enterConnections;
+    }
+
+    int[] getExitConnections() {
+        return exitConnections;
+    }
+
+    int[] getFootPathIndices() {
+        return footPathIndices;
+    }
+
+    int[] getPointerTrips() {
+        return pointerTrips;
+    }
+}
@@ -0,0 +1,337 @@
+package algorithm.csa;
+
+import algorithm.QueryBudget;
+import algorithm.Tools;
+import algorithm.kssp.Journey;
+import network.ConnectionTable;
+import network.FootPathTable;
+import network.PublicTransitNetwork;
+import network.StopPoint;
+import tools.IntList;
+
+import java.util.*;
+
+// Earliest arrival queries answered together in a single scan of the connections, each query being a lane of at most 64.
+// The labels of a stop point or of a trip are stored lane after lane (stop * capacity + lane) and the lanes concerned by
+// a connection are kept in a long mask, so that a connection is read once for all the queries of the batch.
+// Each lane gives the same journey as CsaAlgorithmForKssp launched with the same start, target, departure time and forbidden elements
+// The labels are kept in the workspace of the thread, the lanes of a batch have to be extracted before another batch is started on the same thread
+public class BatchedCsaForKssp {
+
+    public static final int MAX_LANES = 64;
+
+    private PublicTransitNetwork network;
+    private long serviceDayMask;
+    private QueryBudget budget;
+    private int capacity;
+    private int laneCount;
+
+    private int[] starts;
+    private int[] ends;
+    private int[] departureTimes;
+    private boolean[] noFootPaths;
+    private int[] startIndices;
+
+    // Workspace of the thread, acquired by the first query of a batch
+    private BatchedCsaData data;
+
+
+    public BatchedCsaForKssp(PublicTransitNetwork network, int capacity) {
+        this(network, capacity, 0);
+    }
+
+
+    // Only the trips running on the service day of the network are used
+    public BatchedCsaForKssp(PublicTransitNetwork network, int capacity, int serviceDay) {
+
+        if (capacity < 1 || capacity > MAX_LANES) {
+            throw new IllegalArgumentException(String.format("A batch has between 1 and %s lanes, not %s", MAX_LANES, capacity));
+        }
+
+        this.network = network;
+        this.serviceDayMask = 1L << serviceDay;
+        this.capacity = capacity;
+
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.departureTimes = new int[capacity];
+        this.noFootPaths = new boolean[capacity];
+        this.startIndices = new int[capacity];
+    }
+
+
+    // The scan stops when the budget is exhausted, the journeys of the lanes being then incomplete
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return laneCount;
+    }
+
+    public boolean isFull() {
+        return laneCount == capacity;
+    }
+
+
+    public int addQuery(StopPoint start, StopPoint end, int departureSeconds) {
+        return addQuery(start, end, departureSeconds, new IntList(1), new IntList(1), new IntList(1), new IntList(1), false);
+    }
+
+
+    // Adds a query in the next lane and returns the lane, the forbidden connections being indices in the connection table
+    // and the forbidden foot paths indices in the foot path table of the network
+    public int addQuery(StopPoint start,
+                        StopPoint end,
+                        int departureSeconds,
+                        IntList forbiddenVertices,
+                        IntList forbiddenConnections,
+                        IntList forbiddenTrips,
+                        IntList forbiddenFootPaths,
+                        boolean noFootPaths) {
+
+        if (isFull()) {
+            throw new IllegalStateException(String.format("The batch already has %s queries", capacity));
+        }
+
+        if (laneCount == 0) {
+            data = BatchedCsaData.acquire(network, capacity);
+        }
+
+        int lane = laneCount++;
+        long bit = 1L << lane;
+
+        this.starts[lane] = start.getPosition();
+        this.ends[lane] = end.getPosition();
+        this.departureTimes[lane] = departureSeconds;
+        this.noFootPaths[lane] = noFootPaths;
+        this.startIndices[lane] = Tools.connectionBinarySearch(network.getConnectionTable(), departureSeconds - 1);
+
+        data.forbidStops(forbiddenVertices, bit);
+        data.forbidConnections(forbiddenConnections, bit);
+        data.forbidTrips(forbiddenTrips, bit);
+        data.forbidFootPaths(forbiddenFootPaths, bit);
+
+        return lane;
+    }
+
+
+    // Removes the queries and their forbidden elements, the results of the last launch being lost
+    public void clear() {
+        if (data != null) {
+            data.reset();
+            data = null;
+        }
+
+        laneCount = 0;
+    }
+
+
+    public void launch() {
+
+        if (laneCount == 0) {
+            return;
+        }
+
+        data.resetLabels();
+
+        FootPathTable footPaths = network.getFootPathTable();
+        int[] earliestArrivals = data.getEarliestArrivals();
+        long[] forbiddenFootPathLanes = data.getForbiddenFootPathLanes();
+
+        for (int lane = 0; lane < laneCount; lane++) {
+            int start = starts[lane];
+
+            data.markStop(start);
+            earliestArrivals[start * capacity + lane] = departureTimes[lane];
+
+            if (!noFootPaths[lane]) {
+                for (int k = footPaths.getOffsets()[start]; k < footPaths.getOffsets()[start + 1]; k++) {
+                    int to = footPaths.getTargets()[k];
+
+                    // The walks from the start are set as in CsaData, and removed afterwards if they are forbidden
+                    if ((forbiddenFootPathLanes[k] & (1L << lane)) != 0) {
+                        data.markStop(to);
+                        earliestArrivals[to * capacity + lane] = Tools.MAX_ARRIVAL_TIME;
+                        data.setPointer(to * capacity + lane, -1, -1, -1, -1);
+                        continue;
+                    }
+
+                    data.markStop(to);
+                    earliestArrivals[to * capacity + lane] = departureTimes[lane] + footPaths.getDurations()[k];
+                    data.setPointer(to * capacity + lane, -1, -1, k, -1);
+                }
+            }
+        }
+
+        scan();
+    }
+
+
+    private void scan() {
+
+        final ConnectionTable connections = network.getConnectionTable();
+        final int size = connections.size();
+        final int[] departurePositions = connections.getDeparturePositions();
+        final int[] arrivalPositions = connections.getArrivalPositions();
+        final int[] departureSecondsArray = connections.getDepartureSeconds();
+        final int[] arrivalSecondsArray = connections.getArrivalSeconds();
+        final int[] tripIndices = connections.getTripIndices();
+        final int[] sequences = connections.getSequences();
+        final long[] tripServiceDays = network.getTripServiceDays();
+        final int[] footPathOffsets = network.getFootPathTable().getOffsets();
+        final int[] footPathTargets = network.getFootPathTable().getTargets();
+        final int[] footPathDurations = network.getFootPathTable().getDurations();
+        final BatchedCsaData data = this.data;
+        final int[] earliestArrivals = data.getEarliestArrivals();
+        final int[] usedTripsWithPointers = data.getUsedTripsWithPointers();
+        final long[] forbiddenStopLanes = data.getForbiddenStopLanes();
+        final long[] forbiddenConnectionLanes = data.getForbiddenConnectionLanes();
+        final long[] forbiddenTripLanes = data.getForbiddenTripLanes();
+        final long[] forbiddenFootPathLanes = data.getForbiddenFootPathLanes();
+        final int capacity = this.capacity;
+        final QueryBudget budget = this.budget;
+
+        // The lanes start at the first connection of their departure time, in increasing order of start index
+        Integer[] laneOrder = new Integer[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            laneOrder[lane] = lane;
+        }
+        Arrays.sort(laneOrder, Comparator.comparingInt(lane -> startIndices[lane]));
+
+        int nextLane = 0;
+        long activeLanes = 0L;
+        int terminationTime = Tools.MAX_ARRIVAL_TIME;
+
+        for (int i = startIndices[laneOrder[0]]; i < size; i++) {
+            if (budget != null && i % QueryBudget.CHECK_INTERVAL == 0 && !budget.spend(QueryBudget.CHECK_INTERVAL)) {
+                return;
+            }
+
+            while (nextLane < laneCount && startIndices[laneOrder[nextLane]] <= i) {
+                activeLanes |= 1L << laneOrder[nextLane];
+                terminationTime = Math.min(terminationTime, earliestArrivals[ends[laneOrder[nextLane]] * capacity + laneOrder[nextLane]]);
+                nextLane++;
+            }
+
+            // The lanes whose target is reached before this departure are done, as in the scan of a single query
+            if (departureSecondsArray[i] > terminationTime) {
+                terminationTime = Tools.MAX_ARRIVAL_TIME;
+
+                for (long lanes = activeLanes; lanes != 0; lanes &= lanes - 1) {
+                    int lane = Long.numberOfTrailingZeros(lanes);
+                    int endArrival = earliestArrivals[ends[lane] * capacity + lane];
+
+                    if (endArrival != Tools.MAX_ARRIVAL_TIME && departureSecondsArray[i] > endArrival) {
+                        activeLanes &= ~(1L << lane);
+                    } else {
+                        terminationTime = Math.min(terminationTime, endArrival);
+                    }
+                }
+
+                if (activeLanes == 0 && nextLane == laneCount) {
+                    return;
+                }
+            }
+
+            int tripIndex = tripIndices[i];
+
+            if (activeLanes == 0 || (tripServiceDays[tripIndex] & serviceDayMask) == 0) {
+                continue;
+            }
+
+            int departurePosition = departurePositions[i];
+            int arrivalStopPointPosition = arrivalPositions[i];
+            int departureSeconds = departureSecondsArray[i];
+            int arrivalSeconds = arrivalSecondsArray[i];
+            int sequence = sequences[i];
+            int tripLabel = tripIndex * capacity;
+
+            // We avoid certain connections in the lanes where their vertices or their edges are forbidden
+            long forbiddenLanes = activeLanes & (forbiddenStopLanes[departurePosition] |
+                    forbiddenStopLanes[arrivalStopPointPosition] |
+                    forbiddenConnectionLanes[i] |
+                    forbiddenTripLanes[tripIndex]);
+
+            for (long lanes = forbiddenLanes; lanes != 0; lanes &= lanes - 1) {
+                usedTripsWithPointers[tripLabel + Long.numberOfTrailingZeros(lanes)] = -1;
+            }
+
+            long boardingLanes = 0L;
+
+            for (long lanes = activeLanes & ~forbiddenLanes; lanes != 0; lanes &= lanes - 1) {
+                int lane = Long.numberOfTrailingZeros(lanes);
+
+                if (usedTripsWithPointers[tripLabel + lane] != -1 ||
+                        departureSeconds >= earliestArrivals[departurePosition * capacity + lane] + Tools.TRANSFER_WINDOW) {
+                    boardingLanes |= 1L << lane;
+                }
+            }
+
+            if (boardingLanes == 0) {
+                continue;
+            }
+
+            int arrivalLabel = arrivalStopPointPosition * capacity;
+
+            for (long lanes = boardingLanes; lanes != 0; lanes &= lanes - 1) {
+                int lane = Long.numberOfTrailingZeros(lanes);
+
+                if (usedTripsWithPointers[tripLabel + lane] == -1) {
+                    data.markTrip(tripIndex);
+                    usedTripsWithPointers[tripLabel + lane] = sequence;
+                }
+
+                if (arrivalSeconds < earliestArrivals[arrivalLabel + lane]) {
+                    data.markStop(arrivalStopPointPosition);
+                    earliestArrivals[arrivalLabel + lane] = arrivalSeconds;
+                    data.setPointer(arrivalLabel + lane, usedTripsWithPointers[tripLabel + lane], sequence, -1, tripIndex);
+
+                    if (arrivalStopPointPosition == ends[lane]) {
+                        terminationTime = Math.min(terminationTime, arrivalSeconds);
+                    }
+                }
+            }
+
+            for (int k = footPathOffsets[arrivalStopPointPosition]; k < footPathOffsets[arrivalStopPointPosition + 1]; k++) {
+                int footPathTarget = footPathTargets[k];
+                int targetLabel = footPathTarget * capacity;
+                int footPathArrival = arrivalSeconds + footPathDurations[k];
+
+                for (long lanes = boardingLanes & ~(forbiddenStopLanes[footPathTarget] | forbiddenFootPathLanes[k]); lanes != 0; lanes &= lanes - 1) {
+                    int lane = Long.numberOfTrailingZeros(lanes);
+
+                    if (footPathArrival < earliestArrivals[targetLabel + lane]) {
+                        data.markStop(footPathTarget);
+                        earliestArrivals[targetLabel + lane] = footPathArrival;
+                        data.setPointer(targetLabel + lane, usedTripsWithPointers[tripLabel + lane], sequence, k, tripIndex);
+
+                        if (footPathTarget == ends[lane]) {
+                            terminationTime = Math.min(terminationTime, footPathArrival);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    // Same extraction as CsaAlgorithmForKssp, reading the pointers of the lane
+    public Optional<Journey> extractResult(int lane) {
+        return CsaAlgorithmForKssp.extractJourney(network,
+                starts[lane],
+                ends[lane],
+                departureTimes[lane],
+                data.getEnterConnections(),
+                data.getExitConnections(),
+                data.getFootPathIndices(),
+                data.getPointerTrips(),
+                capacity,
+                lane);
+    }
+}
@@ -1,200 +1,436 @@
 package algorithm.csa;
 
-import algorithm.JourneyPointer;
+import algorithm.QueryBudget;
 import algorithm.Tools;
 import algorithm.kssp.Journey;
 import algorithm.kssp.Leg;
 import com.google.common.base.Stopwatch;
 import network.*;
-import tools.Pair;
+import tools.IndexSet;
+import tools.IntList;
 
 import java.util.*;
 
 public class CsaAlgorithmForKssp {
 
+    private static final IndexSet NONE = new IndexSet(0);
+
     private PublicTransitNetwork network;
     private CsaData csaData;
     private StopPoint start;
     private StopPoint end;
     private int departureSeconds;
+    private long serviceDayMask;
+    private int[] lowerBounds;
+    private int lowerBoundsTarget = -1;
+    private boolean sharedLowerBounds;
+    private int arrivalBound = Tools.MAX_ARRIVAL_TIME;
+    private QueryBudget budget;
+
+    // Arguments of the last launch, kept to repair its labels when more elements are forbidden
+    private boolean[] launchedVertices;
+    private IndexSet launchedConnections;
+    private IndexSet launchedTrips;
+    private IndexSet launchedFootPaths;
+    private boolean launchedNoFootPaths;
+    private int launchedStartIndex;
+    private int launchedGeneration = -1;
+    private int launchedArrivalBound;
 
 
     public CsaAlgorithmForKssp(PublicTransitNetwork network, StopPoint start, StopPoint end, int departureSeconds) {
+        this(network, start, end, departureSeconds, 0);
+    }
+
+
+    // Only the trips running on the service day of the network are used
+    public CsaAlgorithmForKssp(PublicTransitNetwork network, StopPoint start, StopPoint end, int departureSeconds, int serviceDay) {
         this.network = network;
         this.start = start;
         this.end = end;
         this.departureSeconds = departureSeconds;
+        this.serviceDayMask = 1L << serviceDay;
     }
 
 
     public void launch() {
         boolean[] ignored = new boolean[this.network.getStopPoints().size()];
-        launch(ignored, Collections.emptyList(), Collections.emptySet(), false);
+        launch(ignored, NONE, NONE, NONE, false);
+    }
+
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, NONE, false);
     }
 
-    public void launch(boolean[] forbiddenVertices, List<Integer> forbiddenEdges) {
-        launch(forbiddenVertices, forbiddenEdges, Collections.emptySet(), false);
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections, boolean noFootPaths) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, NONE, noFootPaths);
     }
 
-    public void launch(boolean[] forbiddenVertices, List<Integer> forbiddenEdges, boolean noFootPaths) {
-        launch(forbiddenVertices, forbiddenEdges, Collections.emptySet(), noFootPaths);
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections, IndexSet forbiddenFootPaths) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, forbiddenFootPaths, false);
     }
 
-    public void launch(boolean[] forbiddenVertices, List<Integer> forbiddenEdges, Set<Pair<Integer, Integer>> forbiddenFootPaths) {
-        launch(forbiddenVertices, forbiddenEdges, forbiddenFootPaths, false);
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections, IndexSet forbiddenFootPaths, boolean noFootPaths) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, forbiddenFootPaths, noFootPaths);
     }
 
 
+    // The forbidden connections are indices in the connection table, the forbidden trips trip indices
+    // and the forbidden foot paths indices in the foot path table of the network
     public void launch(boolean[] forbiddenVertices,
-                       List<Integer> forbiddenEdges,
-                       Set<Pair<Integer, Integer>> forbiddenFootPaths,
+                       IndexSet forbiddenConnections,
+                       IndexSet forbiddenTrips,
+                       IndexSet forbiddenFootPaths,
                        boolean noFootPaths) {
 
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         this.csaData = CsaData.initializeCsa(network, start, departureSeconds, noFootPaths);
 
-        for (Integer departureStop : this.csaData.getDepartureStops()) {
-            Pair<Integer, Integer> pair = new Pair<>(start.getPosition(), departureStop);
-            if (forbiddenFootPaths.contains(pair)) {
-                this.csaData.getEarliestArrivalArray()[departureStop] = Tools.MAX_ARRIVAL_TIME;
-                this.csaData.getJourneyPointers().set(departureStop, new JourneyPointer(-1, -1, FootPath.getEmptyFootPath(), ""));
+        if (!forbiddenFootPaths.isEmpty()) {
+            for (Integer departureStop : this.csaData.getDepartureStops()) {
+                if (forbiddenFootPaths.contains(this.csaData.getFootPathIndices()[departureStop])) {
+                    this.csaData.getEarliestArrivalArray()[departureStop] = Tools.MAX_ARRIVAL_TIME;
+                    this.csaData.clearPointer(departureStop);
+                }
             }
         }
 
-        this.csaData.setStartIndex(Tools.connectionBinarySearch(network.getConnections(), departureSeconds - 1));
+        this.csaData.setStartIndex(Tools.connectionBinarySearch(network.getConnectionTable(), departureSeconds - 1));
+
+        this.launchedVertices = forbiddenVertices;
+        this.launchedConnections = forbiddenConnections;
+        this.launchedTrips = forbiddenTrips;
+        this.launchedFootPaths = forbiddenFootPaths;
+        this.launchedNoFootPaths = noFootPaths;
+        this.launchedStartIndex = this.csaData.getStartIndex();
+        this.launchedGeneration = this.csaData.getGeneration();
+        this.launchedArrivalBound = this.arrivalBound;
 
-        csa(forbiddenVertices, forbiddenEdges, forbiddenFootPaths);
+        csa(forbiddenVertices, forbiddenConnections, forbiddenTrips, forbiddenFootPaths);
 
         stopwatch.stop();
     }
 
 
+    // Launches again with the same start, target and departure time after the given vertices, connections, trips and foot paths
+    // have been added to the forbidden elements of the last launch. The scan is the same as the last one until the first connection
+    // that reads one of them, so the labels written from this connection on are undone and the scan goes on from there.
+    // A full launch is done if the labels of the last launch are lost or if a walk from the start becomes forbidden
+    public void relaunch(IntList addedVertices, IntList addedConnections, IntList addedTrips, IntList addedFootPaths) {
+
+        if (this.launchedGeneration != this.csaData.getGeneration() || this.launchedArrivalBound != this.arrivalBound) {
+            launch(this.launchedVertices, this.launchedConnections, this.launchedTrips, this.launchedFootPaths, this.launchedNoFootPaths);
+            return;
+        }
+
+        ConnectionTable connections = this.network.getConnectionTable();
+        FootPathTable footPaths = this.network.getFootPathTable();
+        FootPathTable inboundFootPaths = this.network.getInboundFootPathTable();
+        int from = this.launchedStartIndex;
+        int first = connections.size();
+
+        for (int i = 0; i < addedConnections.size(); i++) {
+            if (addedConnections.get(i) >= from) {
+                first = Math.min(first, addedConnections.get(i));
+            }
+        }
+
+        for (int i = 0; i < addedTrips.size(); i++) {
+            int trip = addedTrips.get(i);
+            for (int k = connections.getTripOffsets()[trip]; k < connections.getTripOffsets()[trip + 1]; k++) {
+                if (connections.getTripConnections()[k] >= from) {
+                    first = Math.min(first, connections.getTripConnections()[k]);
+                }
+            }
+        }
+
+        // A vertex is read by the connections leaving or reaching it and by the walks towards it
+        for (int i = 0; i < addedVertices.size(); i++) {
+            int vertex = addedVertices.get(i);
+            first = Math.min(first, firstConnection(connections.getStopOffsets(), connections.getStopConnections(), vertex, from));
+            first = Math.min(first, firstConnection(connections.getArrivalStopOffsets(), connections.getArrivalStopConnections(), vertex, from));
+
+            for (int k = inboundFootPaths.getOffsets()[vertex]; k < inboundFootPaths.getOffsets()[vertex + 1]; k++) {
+                first = Math.min(first, firstConnection(connections.getArrivalStopOffsets(), connections.getArrivalStopConnections(), inboundFootPaths.getTargets()[k], from));
+            }
+        }
+
+        // A foot path is read by the connections reaching its departure stop point
+        for (int i = 0; i < addedFootPaths.size(); i++) {
+            int source = footPaths.sourceOf(addedFootPaths.get(i));
+
+            if (source == this.start.getPosition() && !this.launchedNoFootPaths) {
+                launch(this.launchedVertices, this.launchedConnections, this.launchedTrips, this.launchedFootPaths, this.launchedNoFootPaths);
+                return;
+            }
+
+            first = Math.min(first, firstConnection(connections.getArrivalStopOffsets(), connections.getArrivalStopConnections(), source, from));
+        }
+
+        this.csaData.undo(first);
+        this.csaData.setStartIndex(first);
+
+        csa(this.launchedVertices, this.launchedConnections, this.launchedTrips, this.launchedFootPaths);
+    }
+
+
+    // First connection of the row of the stop whose index is at least from, the size of the table if there is none
+    private int firstConnection(int[] offsets, int[] rows, int stopPosition, int from) {
+        int low = offsets[stopPosition];
+        int high = offsets[stopPosition + 1];
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (rows[middle] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low < offsets[stopPosition + 1] ? rows[low] : this.network.getConnectionTable().size();
+    }
+
+
+    // The journeys arriving after the bound are of no use to the caller, the scan then stops at the connections departing after it
+    // and the journeys found may arrive after it
+    public void setArrivalBound(int arrivalBound) {
+        this.arrivalBound = arrivalBound;
+    }
+
+
+    // The scan stops when the budget is exhausted, the labels of the launch being then incomplete
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
+    }
+
+
+    // Lower bounds to the target already computed for the query, only read by the scans so that they can be shared between
+    // the scans of several threads
+    public void setLowerBounds(int[] lowerBounds, StopPoint target) {
+        this.lowerBounds = lowerBounds;
+        this.lowerBoundsTarget = lowerBounds != null ? target.getPosition() : -1;
+        this.sharedLowerBounds = lowerBounds != null;
+    }
+
+
     public void updateStartAndEnd(StopPoint start, StopPoint end, int departureSeconds) {
         this.start = start;
         this.end = end;
         this.departureSeconds = departureSeconds;
+        this.launchedGeneration = -1;
     }
 
 
     public void csa(boolean[] forbiddenVertices,
-                    List<Integer> forbiddenEdges,
-                    Set<Pair<Integer, Integer>> forbiddenFootPaths) {
+                    IndexSet forbiddenConnections,
+                    IndexSet forbiddenTrips,
+                    IndexSet forbiddenFootPaths) {
+
+        // Using the columns of the connection table instead of connection objects, using an array instead of a set for used trips
+        // Using only earliest arrival time instead of stop labels for each stop, the foot paths being read from their table
+        final ConnectionTable connections = network.getConnectionTable();
+        final int size = connections.size();
+        final int[] departurePositions = connections.getDeparturePositions();
+        final int[] arrivalPositions = connections.getArrivalPositions();
+        final int[] departureSecondsArray = connections.getDepartureSeconds();
+        final int[] arrivalSecondsArray = connections.getArrivalSeconds();
+        final int[] tripIndices = connections.getTripIndices();
+        final int[] sequences = connections.getSequences();
+        final long[] tripServiceDays = network.getTripServiceDays();
+        final long serviceDayMask = this.serviceDayMask;
+        final int[] footPathOffsets = network.getFootPathTable().getOffsets();
+        final int[] footPathTargets = network.getFootPathTable().getTargets();
+        final int[] footPathDurations = network.getFootPathTable().getDurations();
+        final int[] earliestArrivalArray = this.csaData.getEarliestArrivalArray();
+        final int[] usedTripsWithPointersArray = this.csaData.getUsedTripsWithPointersArray();
+        final int endPosition = this.end.getPosition();
+        final int[] lowerBounds = lowerBoundsTo(endPosition);
+        final int arrivalBound = this.arrivalBound;
+        final QueryBudget budget = this.budget;
 
-        // Using an array instead of an array list for connections, using an array instead of a set for used trips
-        // Using only earliest arrival time instead of stop labels for each stop
-        final int size = network.getConnections().size();
+        for (int i = this.csaData.getStartIndex(); i < size; i++) {
+            // An incomplete launch can not be relaunched
+            if (budget != null && i % QueryBudget.CHECK_INTERVAL == 0 && !budget.spend(QueryBudget.CHECK_INTERVAL)) {
+                this.launchedGeneration = -1;
+                return;
+            }
 
-        int j = forbiddenEdges.isEmpty() ? -1 : Collections.binarySearch(forbiddenEdges, this.csaData.getStartIndex());
-        if (j < 0 && !forbiddenEdges.isEmpty()) {
-            j = (-j) - 1;
-        }
+            // Checked before any skipped connection, a connection departing after the earliest arrival at the target can not improve it
+            if (earliestArrivalArray[endPosition] != Tools.MAX_ARRIVAL_TIME &&
+                    departureSecondsArray[i] > earliestArrivalArray[endPosition]) {
+                return;
+            }
 
-        for (int i = this.csaData.getStartIndex(); i < size; i++) {
-            Connection connection = network.getConnectionsArray()[i];
+            if (departureSecondsArray[i] > arrivalBound) {
+                return;
+            }
+
+            int departurePosition = departurePositions[i];
+            int arrivalStopPointPosition = arrivalPositions[i];
+            int tripIndex = tripIndices[i];
+
+            if ((tripServiceDays[tripIndex] & serviceDayMask) == 0) {
+                continue;
+            }
 
             // We avoid certain connections if their vertices are forbidden or their edges
-            if (forbiddenVertices[connection.getDeparturePosition()] || forbiddenVertices[connection.getArrivalPosition()]) {
-                this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()] = -1;
+            if (forbiddenVertices[departurePosition] || forbiddenVertices[arrivalStopPointPosition] ||
+                    forbiddenConnections.contains(i) || forbiddenTrips.contains(tripIndex)) {
+                if (usedTripsWithPointersArray[tripIndex] != -1) {
+                    this.csaData.recordTrip(i, tripIndex);
+                    usedTripsWithPointersArray[tripIndex] = -1;
+                }
                 continue;
             }
 
-            if (j != -1 && j < forbiddenEdges.size() && forbiddenEdges.get(j) == i) {
-                j++;
-                this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()] = -1;
+            // A connection from which the target can not be reached before its current earliest arrival or the arrival bound is of no use,
+            // the comparison being strict so that the journeys tied with the best one keep their pointers
+            if (lowerBounds != null &&
+                    lowerBounds[arrivalStopPointPosition] > Math.min(earliestArrivalArray[endPosition], arrivalBound) - arrivalSecondsArray[i]) {
                 continue;
             }
 
-            int earliestArrival = this.csaData.getEarliestArrivalArray()[connection.getDeparturePosition()];
+            int earliestArrival = earliestArrivalArray[departurePosition];
 
-            if (this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()] != -1 ||
-                    connection.getDepartureSeconds() >= earliestArrival + Tools.TRANSFER_WINDOW) {
+            if (usedTripsWithPointersArray[tripIndex] != -1 ||
+                    departureSecondsArray[i] >= earliestArrival + Tools.TRANSFER_WINDOW) {
 
-                if (this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()] == -1) {
-                    this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()] = connection.getSequence();
+                if (usedTripsWithPointersArray[tripIndex] == -1) {
+                    this.csaData.markTrip(tripIndex);
+                    this.csaData.recordTrip(i, tripIndex);
+                    usedTripsWithPointersArray[tripIndex] = sequences[i];
                 }
 
-                int arrivalStopPointPosition = connection.getArrivalPosition();
-                int arrivalSeconds = connection.getArrivalSeconds();
+                int arrivalSeconds = arrivalSecondsArray[i];
 
-                if (arrivalSeconds < this.csaData.getEarliestArrivalArray()[arrivalStopPointPosition]) {
+                if (arrivalSeconds < earliestArrivalArray[arrivalStopPointPosition]) {
 
-                    this.csaData.getEarliestArrivalArray()[arrivalStopPointPosition] = arrivalSeconds;
-                    this.csaData.getJourneyPointers().get(arrivalStopPointPosition).
-                            update(this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()],
-                                    connection.getSequence(),
-                                    connection.getTripId());
+                    if (earliestArrivalArray[arrivalStopPointPosition] == Tools.MAX_ARRIVAL_TIME) {
+                        this.csaData.markStop(arrivalStopPointPosition);
+                    }
+                    this.csaData.recordStop(i, arrivalStopPointPosition);
+                    earliestArrivalArray[arrivalStopPointPosition] = arrivalSeconds;
+                    this.csaData.setPointer(arrivalStopPointPosition, usedTripsWithPointersArray[tripIndex], sequences[i], -1, tripIndex);
                 }
 
-                for (FootPath footPath : network.getFootPaths().get(arrivalStopPointPosition)) {
+                for (int k = footPathOffsets[arrivalStopPointPosition]; k < footPathOffsets[arrivalStopPointPosition + 1]; k++) {
+                    int footPathTarget = footPathTargets[k];
 
-                    if (forbiddenVertices[footPath.getTo().getPosition()]) {
+                    if (forbiddenVertices[footPathTarget]) {
                         continue;
                     }
 
-                    Pair<Integer, Integer> pair = new Pair<>(footPath.getFrom().getPosition(), footPath.getTo().getPosition());
-                    if (forbiddenFootPaths.contains(pair)) {
+                    if (forbiddenFootPaths.contains(k)) {
                         continue;
                     }
 
-                    if (arrivalSeconds + footPath.getDuration() < this.csaData.getEarliestArrivalArray()[footPath.getTo().getPosition()]) {
+                    if (arrivalSeconds + footPathDurations[k] < earliestArrivalArray[footPathTarget]) {
 
-                        this.csaData.getEarliestArrivalArray()[footPath.getTo().getPosition()] = arrivalSeconds + footPath.getDuration();
-                        this.csaData.getJourneyPointers().get(footPath.getTo().getPosition()).
-                                update(this.csaData.getUsedTripsWithPointersArray()[connection.getTripIndex()],
-                                        connection.getSequence(),
-                                        footPath,
-                                        connection.getTripId());
+                        if (earliestArrivalArray[footPathTarget] == Tools.MAX_ARRIVAL_TIME) {
+                            this.csaData.markStop(footPathTarget);
+                        }
+                        this.csaData.recordStop(i, footPathTarget);
+                        earliestArrivalArray[footPathTarget] = arrivalSeconds + footPathDurations[k];
+                        this.csaData.setPointer(footPathTarget, usedTripsWithPointersArray[tripIndex], sequences[i], k, tripIndex);
                     }
                 }
             }
+        }
+    }
 
-            if (this.csaData.getEarliestArrivalArray()[this.end.getPosition()] != Tools.MAX_ARRIVAL_TIME &&
-                    connection.getDepartureSeconds() > this.csaData.getEarliestArrivalArray()[this.end.getPosition()]) {
-                return;
+
+    // Lower bounds of the travel times to the target given by the landmarks of the network, kept while the target does not change
+    private int[] lowerBoundsTo(int target) {
+        Landmarks landmarks = this.network.getLandmarks();
+
+        if (landmarks == null || landmarks.size() == 0) {
+            return null;
+        }
+
+        if (this.lowerBoundsTarget != target) {
+            if (this.lowerBounds == null || this.sharedLowerBounds) {
+                this.lowerBounds = new int[this.network.getStopPoints().size()];
+                this.sharedLowerBounds = false;
             }
+            landmarks.lowerBoundsTo(target, this.lowerBounds);
+            this.lowerBoundsTarget = target;
         }
+
+        return this.lowerBounds;
     }
 
 
     public Optional<Journey> extractResult() {
+        return extractJourney(this.network,
+                this.start.getPosition(),
+                this.end.getPosition(),
+                this.departureSeconds,
+                this.csaData.getEnterConnections(),
+                this.csaData.getExitConnections(),
+                this.csaData.getFootPathIndices(),
+                this.csaData.getPointerTrips(),
+                1,
+                0);
+    }
 
-        JourneyPointer currentJourneyPointer = this.csaData.getJourneyPointers().get(this.end.getPosition());
+
+    // Journey from the pointers of a scan, the pointers of a stop being at stop * capacity + lane so that the lanes
+    // of BatchedCsaForKssp are read the same way as the labels of a single query
+    static Optional<Journey> extractJourney(PublicTransitNetwork network,
+                                            int start,
+                                            int end,
+                                            int departureSeconds,
+                                            int[] enterConnections,
+                                            int[] exitConnections,
+                                            int[] footPathIndices,
+                                            int[] pointerTrips,
+                                            int capacity,
+                                            int lane) {
+
+        final ConnectionTable connections = network.getConnectionTable();
+        final int[] tripOffsets = connections.getTripOffsets();
+        final int[] tripConnections = connections.getTripConnections();
+        int currentStop = end;
         Journey result = new Journey();
 
-        if (currentJourneyPointer.getEnterConnection() == -1) {
-            Optional<FootPath> endFootPath = this.network.getFootPaths().get(this.start.getPosition()).stream().
-                    filter(e -> e.getTo().getPosition() == this.end.getPosition()).findAny();
-            if (endFootPath.isPresent()) {
-                Leg walkingLeg = new Leg(endFootPath.get().getFrom().getPosition(),
-                        this.departureSeconds,
-                        endFootPath.get().getTo().getPosition(),
-                        this.departureSeconds + endFootPath.get().getDuration(),
-                        -1,
-                        true);
-                result.getLegs().add(walkingLeg);
-                result.setArrivalTime(result.getLegs().get(result.getLegs().size() - 1).getArrivalTime());
-                return Optional.of(result);
-            } else {
-                return Optional.empty();
+        if (enterConnections[currentStop * capacity + lane] == -1) {
+            FootPathTable footPaths = network.getFootPathTable();
+
+            for (int k = footPaths.getOffsets()[start]; k < footPaths.getOffsets()[start + 1]; k++) {
+                if (footPaths.getTargets()[k] == currentStop) {
+                    Leg walkingLeg = new Leg(start,
+                            departureSeconds,
+                            currentStop,
+                            departureSeconds + footPaths.getDurations()[k],
+                            -1,
+                            true);
+                    result.getLegs().add(walkingLeg);
+                    result.setArrivalTime(walkingLeg.getArrivalTime());
+                    return Optional.of(result);
+                }
             }
-        }
 
-        while (currentJourneyPointer.getEnterConnection() != -1) {
+            return Optional.empty();
+        }
 
-            createLeg(result, currentJourneyPointer);
+        while (enterConnections[currentStop * capacity + lane] != -1) {
+            int label = currentStop * capacity + lane;
 
-            int offset = this.network.getTrips().get(currentJourneyPointer.getTripId()).getConnections().get(0).getSequence() == 1 ? 1 : 0;
-            Connection connection = this.network.getTrips().get(currentJourneyPointer.getTripId()).getConnections().get(currentJourneyPointer.getEnterConnection() - offset);
+            createLeg(network, result, currentStop, enterConnections[label], exitConnections[label], footPathIndices[label], pointerTrips[label]);
 
-            currentJourneyPointer = this.csaData.getJourneyPointers().get(connection.getDeparturePosition());
+            int enterConnection = tripConnections[tripOffsets[pointerTrips[label]] + enterConnections[label]];
+            currentStop = connections.getDeparturePositions()[enterConnection];
         }
 
-        if (currentJourneyPointer.getFootPath().getDuration() != -1) {
+        if (footPathIndices[currentStop * capacity + lane] != -1) {
+            int duration = network.getFootPathTable().getDurations()[footPathIndices[currentStop * capacity + lane]];
             int departureTime = result.getLegs().get(result.getLegs().size() - 1).getDepartureTime();
-            Leg walkingLeg = new Leg(currentJourneyPointer.getFootPath().getFrom().getPosition(),
-                    departureTime - currentJourneyPointer.getFootPath().getDuration() - Tools.TRANSFER_WINDOW,
-                    currentJourneyPointer.getFootPath().getTo().getPosition(),
+            Leg walkingLeg = new Leg(start,
+                    departureTime - duration - Tools.TRANSFER_WINDOW,
+                    currentStop,
                     departureTime - Tools.TRANSFER_WINDOW,
                     -1,
                     true);
@@ -208,36 +444,44 @@ public class CsaAlgorithmForKssp {
     }
 
 
-    private void createLeg(Journey journey, JourneyPointer journeyPointer) {
-
-        int offset = this.network.getTrips().get(journeyPointer.getTripId()).getConnections().get(0).getSequence() == 1 ? 1 : 0;
-        Connection currentConnection = this.network.getTrips().get(journeyPointer.getTripId()).getConnections().get(journeyPointer.getExitConnection() - offset);
-
-        if (journeyPointer.getFootPath().getDuration() != -1) {
-            Leg walkingLeg = new Leg(journeyPointer.getFootPath().getFrom().getPosition(),
-                    currentConnection.getArrivalSeconds(),
-                    journeyPointer.getFootPath().getTo().getPosition(),
-                    currentConnection.getArrivalSeconds() + journeyPointer.getFootPath().getDuration(),
+    // The legs of the trip ending at the stop, preceded by the walk to the stop if there is one, added in reverse order
+    private static void createLeg(PublicTransitNetwork network,
+                                  Journey journey,
+                                  int stopPosition,
+                                  int enterSequence,
+                                  int exitSequence,
+                                  int footPathIndex,
+                                  int tripIndex) {
+
+        ConnectionTable connections = network.getConnectionTable();
+        int tripOffset = connections.getTripOffsets()[tripIndex];
+        int exitConnection = connections.getTripConnections()[tripOffset + exitSequence];
+
+        if (footPathIndex != -1) {
+            Leg walkingLeg = new Leg(connections.getArrivalPositions()[exitConnection],
+                    connections.getArrivalSeconds()[exitConnection],
+                    stopPosition,
+                    connections.getArrivalSeconds()[exitConnection] + network.getFootPathTable().getDurations()[footPathIndex],
                     -1,
                     true);
 
             journey.getLegs().add(walkingLeg);
         }
 
-        for (int i = journeyPointer.getExitConnection(); i >= journeyPointer.getEnterConnection(); i--) {
-            currentConnection = this.network.getTrips().get(journeyPointer.getTripId()).getConnections().get(i - offset);
-            Leg currentLeg = new Leg(currentConnection.getDeparturePosition(),
-                    currentConnection.getDepartureSeconds(),
-                    currentConnection.getArrivalPosition(),
-                    currentConnection.getArrivalSeconds(),
-                    currentConnection.getTripIndex(),
+        for (int i = exitSequence; i >= enterSequence; i--) {
+            int connection = connections.getTripConnections()[tripOffset + i];
+            Leg currentLeg = new Leg(connections.getDeparturePositions()[connection],
+                    connections.getDepartureSeconds()[connection],
+                    connections.getArrivalPositions()[connection],
+                    connections.getArrivalSeconds()[connection],
+                    connections.getTripIndices()[connection],
                     false);
             journey.getLegs().add(currentLeg);
         }
     }
 
 
-    private void makeSimple(Journey journey) {
+    static void makeSimple(Journey journey) {
 
         while (!isSimple(journey)) {
 
@@ -261,7 +505,7 @@ public class CsaAlgorithmForKssp {
     }
 
 
-    private void removeBetweenIndexes(Journey journey, int fromIndex, int toIndex) {
+    private static void removeBetweenIndexes(Journey journey, int fromIndex, int toIndex) {
 
         int i = 0;
 
@@ -282,7 +526,7 @@ public class CsaAlgorithmForKssp {
     }
 
 
-    public boolean isSimple(Journey journey) {
+    public static boolean isSimple(Journey journey) {
 
         Set<Integer> stops = new HashSet<>();
 
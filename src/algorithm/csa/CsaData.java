@@ -1,30 +1,156 @@
 package algorithm.csa;
 
-import algorithm.JourneyPointer;
 import algorithm.Tools;
-import network.FootPath;
+import network.FootPathTable;
 import network.PublicTransitNetwork;
 import network.StopPoint;
 
 import java.util.*;
 
+// Scratch state of the CSA, kept by thread and reused from one launch to the next.
+// The stops reached and the trips used during a scan are recorded so that only them are reset before the next launch,
+// the result of a launch has then to be extracted before launching another scan on the same thread
 public class CsaData {
 
+    private static final ThreadLocal<CsaData> WORKSPACES = new ThreadLocal<>();
+
+    private PublicTransitNetwork network;
     private int[] earliestArrivalArray;
     private int[] usedTripsWithPointersArray;
-    private List<JourneyPointer> journeyPointers;
+    private int[] enterConnections;
+    private int[] exitConnections;
+    private int[] footPathIndices;
+    private int[] pointerTrips;
     private List<Integer> departureStops;
+    private int[] touchedStops = new int[64];
+    private int touchedStopCount;
+    private int[] touchedTrips = new int[64];
+    private int touchedTripCount;
     private int startIndex;
     private int departureTime;
+    private int generation;
+    private int[] undoLog = new int[UNDO_ENTRY * 64];
+    private int undoLogSize;
+
+    // An entry of the undo log is the connection being scanned, the stop position or minus one minus the trip index,
+    // and the values overwritten
+    private static final int UNDO_ENTRY = 7;
 
     public CsaData(PublicTransitNetwork network) {
+        this.network = network;
         this.earliestArrivalArray = new int[network.getStopPoints().size()];
+        Arrays.fill(this.earliestArrivalArray, Tools.MAX_ARRIVAL_TIME);
         this.usedTripsWithPointersArray = new int[network.getTrips().size()];
         Arrays.fill(this.usedTripsWithPointersArray, -1);
-        this.journeyPointers = new ArrayList<>(network.getStopPoints().size());
+        this.enterConnections = new int[network.getStopPoints().size()];
+        this.exitConnections = new int[network.getStopPoints().size()];
+        this.footPathIndices = new int[network.getStopPoints().size()];
+        this.pointerTrips = new int[network.getStopPoints().size()];
+        Arrays.fill(this.enterConnections, -1);
+        Arrays.fill(this.exitConnections, -1);
+        Arrays.fill(this.footPathIndices, -1);
+        Arrays.fill(this.pointerTrips, -1);
         this.departureStops = new ArrayList<>();
     }
 
+    // Workspace of the current thread for the network, reset to its initial state
+    public static CsaData acquire(PublicTransitNetwork network) {
+        CsaData data = WORKSPACES.get();
+
+        if (data == null || data.network != network) {
+            data = new CsaData(network);
+            WORKSPACES.set(data);
+        } else {
+            data.reset();
+        }
+
+        return data;
+    }
+
+    // Records a stop whose earliest arrival is about to leave Tools.MAX_ARRIVAL_TIME
+    public void markStop(int stopPosition) {
+        if (touchedStopCount == touchedStops.length) {
+            touchedStops = Arrays.copyOf(touchedStops, touchedStopCount * 2);
+        }
+        touchedStops[touchedStopCount++] = stopPosition;
+    }
+
+    // Records a trip whose pointer is about to leave -1
+    public void markTrip(int tripIndex) {
+        if (touchedTripCount == touchedTrips.length) {
+            touchedTrips = Arrays.copyOf(touchedTrips, touchedTripCount * 2);
+        }
+        touchedTrips[touchedTripCount++] = tripIndex;
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedStopCount; i++) {
+            int stop = touchedStops[i];
+            earliestArrivalArray[stop] = Tools.MAX_ARRIVAL_TIME;
+            clearPointer(stop);
+        }
+
+        for (int i = 0; i < touchedTripCount; i++) {
+            usedTripsWithPointersArray[touchedTrips[i]] = -1;
+        }
+
+        touchedStopCount = 0;
+        touchedTripCount = 0;
+        departureStops.clear();
+        startIndex = 0;
+        undoLogSize = 0;
+        generation++;
+    }
+
+    // Changes on each acquisition of the workspace, so that a scan can tell whether its labels are still there
+    public int getGeneration() {
+        return generation;
+    }
+
+    // Records the labels of the stop before the connection overwrites them
+    public void recordStop(int connection, int stopPosition) {
+        int entry = nextUndoEntry();
+        undoLog[entry] = connection;
+        undoLog[entry + 1] = stopPosition;
+        undoLog[entry + 2] = earliestArrivalArray[stopPosition];
+        undoLog[entry + 3] = enterConnections[stopPosition];
+        undoLog[entry + 4] = exitConnections[stopPosition];
+        undoLog[entry + 5] = footPathIndices[stopPosition];
+        undoLog[entry + 6] = pointerTrips[stopPosition];
+    }
+
+    // Records the pointer of the trip before the connection overwrites it
+    public void recordTrip(int connection, int tripIndex) {
+        int entry = nextUndoEntry();
+        undoLog[entry] = connection;
+        undoLog[entry + 1] = -1 - tripIndex;
+        undoLog[entry + 2] = usedTripsWithPointersArray[tripIndex];
+    }
+
+    private int nextUndoEntry() {
+        if (undoLogSize == undoLog.length) {
+            undoLog = Arrays.copyOf(undoLog, undoLogSize * 2);
+        }
+        int entry = undoLogSize;
+        undoLogSize += UNDO_ENTRY;
+        return entry;
+    }
+
+    // Restores the labels as they were before the scan of the connection, the entries being undone from the last one
+    public void undo(int connection) {
+        while (undoLogSize > 0 && undoLog[undoLogSize - UNDO_ENTRY] >= connection) {
+            undoLogSize -= UNDO_ENTRY;
+            int key = undoLog[undoLogSize + 1];
+
+            if (key >= 0) {
+                earliestArrivalArray[key] = undoLog[undoLogSize + 2];
+                setPointer(key, undoLog[undoLogSize + 3], undoLog[undoLogSize + 4], undoLog[undoLogSize + 5], undoLog[undoLogSize + 6]);
+            } else {
+                usedTripsWithPointersArray[-1 - key] = undoLog[undoLogSize + 2];
+            }
+        }
+    }
+
     public int[] getEarliestArrivalArray() {
         return earliestArrivalArray;
     }
@@ -33,8 +159,33 @@ public class CsaData {
         return usedTripsWithPointersArray;
     }
 
-    public List<JourneyPointer> getJourneyPointers() {
-        return journeyPointers;
+    // Journey pointers by stop : the trip and its enter and exit sequences, and the index in the foot path table
+    // of the walk to the stop, -1 if the stop is not reached by a trip or by a walk
+    public int[] getEnterConnections() {
+        return enterConnections;
+    }
+
+    public int[] getExitConnections() {
+        return exitConnections;
+    }
+
+    public int[] getFootPathIndices() {
+        return footPathIndices;
+    }
+
+    public int[] getPointerTrips() {
+        return pointerTrips;
+    }
+
+    public void setPointer(int stopPosition, int enterConnection, int exitConnection, int footPathIndex, int tripIndex) {
+        enterConnections[stopPosition] = enterConnection;
+        exitConnections[stopPosition] = exitConnection;
+        footPathIndices[stopPosition] = footPathIndex;
+        pointerTrips[stopPosition] = tripIndex;
+    }
+
+    public void clearPointer(int stopPosition) {
+        setPointer(stopPosition, -1, -1, -1, -1);
     }
 
     public List<Integer> getDepartureStops() {
@@ -82,29 +233,25 @@ public class CsaData {
                                         int departureSeconds,
                                         boolean noFootPaths) {
 
-        CsaData data = new CsaData(network);
+        CsaData data = acquire(network);
 
         data.setDepartureTime(departureSeconds);
 
-        for (StopPoint stopPoint : network.getStopPoints()) {
-            data.getEarliestArrivalArray()[stopPoint.getPosition()] = Tools.MAX_ARRIVAL_TIME;
-            data.getJourneyPointers().add(new JourneyPointer(-1, -1, FootPath.getEmptyFootPath(), ""));
-        }
-
-        List<String> departureStops = new ArrayList<>();
+        data.markStop(start.getPosition());
         data.getEarliestArrivalArray()[start.getPosition()] = departureSeconds;
-        departureStops.add(start.getId());
         data.getDepartureStops().add(start.getPosition());
 
         if (!noFootPaths) {
-            for (FootPath footPath : network.getFootPaths().get(start.getPosition())) {
-                if (!departureStops.contains(footPath.getTo().getId())) {
-                    data.getEarliestArrivalArray()[footPath.getTo().getPosition()] = departureSeconds + footPath.getDuration();
-                    data.getJourneyPointers().get(footPath.getTo().getPosition()).update(-1, -1, footPath, "");
-
-                    departureStops.add(footPath.getTo().getId());
-                    data.getDepartureStops().add(footPath.getTo().getPosition());
-                }
+            FootPathTable footPaths = network.getFootPathTable();
+            int from = start.getPosition();
+
+            for (int k = footPaths.getOffsets()[from]; k < footPaths.getOffsets()[from + 1]; k++) {
+                int to = footPaths.getTargets()[k];
+
+                data.markStop(to);
+                data.getEarliestArrivalArray()[to] = departureSeconds + footPaths.getDurations()[k];
+                data.setPointer(to, -1, -1, k, -1);
+                data.getDepartureStops().add(to);
             }
         }
 
@@ -0,0 +1,355 @@
+package algorithm.csa;
+
+import algorithm.Tools;
+import algorithm.kssp.Journey;
+import algorithm.kssp.Leg;
+import network.*;
+import tools.IndexSet;
+
+import java.util.*;
+
+// Latest departure from the start to arrive at the target before a deadline, the connections being scanned in decreasing order
+// from the last one departing before the deadline. The scan mirrors CsaAlgorithmForKssp and uses the same workspace,
+// whose earliest arrival array holds the opposite of the latest departure times so that an unreached stop keeps its initial value.
+// The trip pointers hold the exit sequence of the trips and the walk of a stop is the one leaving it towards the boarding stop
+public class LatestDepartureCsaForKssp {
+
+    private static final IndexSet NONE = new IndexSet(0);
+
+    private PublicTransitNetwork network;
+    private CsaData csaData;
+    private StopPoint start;
+    private StopPoint end;
+    private int arrivalSeconds;
+    private long serviceDayMask;
+    private int[] lowerBounds;
+    private int lowerBoundsSource = -1;
+
+
+    public LatestDepartureCsaForKssp(PublicTransitNetwork network, StopPoint start, StopPoint end, int arrivalSeconds) {
+        this(network, start, end, arrivalSeconds, 0);
+    }
+
+
+    // Only the trips running on the service day of the network are used
+    public LatestDepartureCsaForKssp(PublicTransitNetwork network, StopPoint start, StopPoint end, int arrivalSeconds, int serviceDay) {
+        this.network = network;
+        this.start = start;
+        this.end = end;
+        this.arrivalSeconds = arrivalSeconds;
+        this.serviceDayMask = 1L << serviceDay;
+    }
+
+
+    public void launch() {
+        boolean[] ignored = new boolean[this.network.getStopPoints().size()];
+        launch(ignored, NONE, NONE, NONE, false);
+    }
+
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, NONE, false);
+    }
+
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections, IndexSet forbiddenFootPaths) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, forbiddenFootPaths, false);
+    }
+
+    public void launch(boolean[] forbiddenVertices, IndexSet forbiddenConnections, IndexSet forbiddenFootPaths, boolean noFootPaths) {
+        launch(forbiddenVertices, forbiddenConnections, NONE, forbiddenFootPaths, noFootPaths);
+    }
+
+
+    // The forbidden connections are indices in the connection table, the forbidden trips trip indices
+    // and the forbidden foot paths indices in the foot path table of the network. Without foot paths, the target can not be reached by a walk
+    public void launch(boolean[] forbiddenVertices,
+                       IndexSet forbiddenConnections,
+                       IndexSet forbiddenTrips,
+                       IndexSet forbiddenFootPaths,
+                       boolean noFootPaths) {
+
+        this.csaData = CsaData.acquire(network);
+
+        int target = this.end.getPosition();
+        this.csaData.markStop(target);
+        this.csaData.getEarliestArrivalArray()[target] = -this.arrivalSeconds;
+
+        if (!noFootPaths) {
+            FootPathTable inboundFootPaths = network.getInboundFootPathTable();
+
+            for (int k = inboundFootPaths.getOffsets()[target]; k < inboundFootPaths.getOffsets()[target + 1]; k++) {
+                int footPathIndex = inboundFootPaths.getReversedIndices()[k];
+
+                if (forbiddenFootPaths.contains(footPathIndex)) {
+                    continue;
+                }
+
+                int from = inboundFootPaths.getTargets()[k];
+                this.csaData.markStop(from);
+                this.csaData.getEarliestArrivalArray()[from] = -(this.arrivalSeconds - inboundFootPaths.getDurations()[k]);
+                this.csaData.setPointer(from, -1, -1, footPathIndex, -1);
+            }
+        }
+
+        this.csaData.setStartIndex(lastConnectionBefore(this.arrivalSeconds));
+
+        csa(forbiddenVertices, forbiddenConnections, forbiddenTrips, forbiddenFootPaths);
+    }
+
+
+    public void updateStartAndEnd(StopPoint start, StopPoint end, int arrivalSeconds) {
+        this.start = start;
+        this.end = end;
+        this.arrivalSeconds = arrivalSeconds;
+    }
+
+
+    // Index of the last connection departing at the latest at the time, -1 if there is none
+    private int lastConnectionBefore(int time) {
+        int[] departureSeconds = network.getConnectionTable().getDepartureSeconds();
+        int low = 0;
+        int high = departureSeconds.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (departureSeconds[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+
+        return low - 1;
+    }
+
+
+    public void csa(boolean[] forbiddenVertices,
+                    IndexSet forbiddenConnections,
+                    IndexSet forbiddenTrips,
+                    IndexSet forbiddenFootPaths) {
+
+        final ConnectionTable connections = network.getConnectionTable();
+        final int[] departurePositions = connections.getDeparturePositions();
+        final int[] arrivalPositions = connections.getArrivalPositions();
+        final int[] departureSecondsArray = connections.getDepartureSeconds();
+        final int[] arrivalSecondsArray = connections.getArrivalSeconds();
+        final int[] tripIndices = connections.getTripIndices();
+        final int[] sequences = connections.getSequences();
+        final long[] tripServiceDays = network.getTripServiceDays();
+        final long serviceDayMask = this.serviceDayMask;
+        final FootPathTable inboundFootPaths = network.getInboundFootPathTable();
+        final int[] footPathOffsets = inboundFootPaths.getOffsets();
+        final int[] footPathSources = inboundFootPaths.getTargets();
+        final int[] footPathDurations = inboundFootPaths.getDurations();
+        final int[] footPathIndices = inboundFootPaths.getReversedIndices();
+        final int[] oppositeLatestDepartures = this.csaData.getEarliestArrivalArray();
+        final int[] usedTripsWithPointersArray = this.csaData.getUsedTripsWithPointersArray();
+        final int startPosition = this.start.getPosition();
+        final int[] lowerBounds = lowerBoundsFrom(startPosition);
+
+        for (int i = this.csaData.getStartIndex(); i >= 0; i--) {
+            // A connection departing before the latest departure from the start can not improve it
+            if (oppositeLatestDepartures[startPosition] != Tools.MAX_ARRIVAL_TIME &&
+                    departureSecondsArray[i] < -oppositeLatestDepartures[startPosition]) {
+                return;
+            }
+
+            int departurePosition = departurePositions[i];
+            int arrivalStopPointPosition = arrivalPositions[i];
+            int tripIndex = tripIndices[i];
+
+            if ((tripServiceDays[tripIndex] & serviceDayMask) == 0) {
+                continue;
+            }
+
+            // We avoid certain connections if their vertices are forbidden or their edges
+            if (forbiddenVertices[departurePosition] || forbiddenVertices[arrivalStopPointPosition] ||
+                    forbiddenConnections.contains(i) || forbiddenTrips.contains(tripIndex)) {
+                usedTripsWithPointersArray[tripIndex] = -1;
+                continue;
+            }
+
+            // A connection that can not be reached from the start before the current latest departure from it is of no use
+            if (lowerBounds != null &&
+                    lowerBounds[departurePosition] > departureSecondsArray[i] + oppositeLatestDepartures[startPosition]) {
+                continue;
+            }
+
+            if (usedTripsWithPointersArray[tripIndex] != -1 ||
+                    arrivalSecondsArray[i] + Tools.TRANSFER_WINDOW <= -oppositeLatestDepartures[arrivalStopPointPosition]) {
+
+                if (usedTripsWithPointersArray[tripIndex] == -1) {
+                    this.csaData.markTrip(tripIndex);
+                    usedTripsWithPointersArray[tripIndex] = sequences[i];
+                }
+
+                int departureSeconds = departureSecondsArray[i];
+
+                if (-departureSeconds < oppositeLatestDepartures[departurePosition]) {
+
+                    if (oppositeLatestDepartures[departurePosition] == Tools.MAX_ARRIVAL_TIME) {
+                        this.csaData.markStop(departurePosition);
+                    }
+                    oppositeLatestDepartures[departurePosition] = -departureSeconds;
+                    this.csaData.setPointer(departurePosition, sequences[i], usedTripsWithPointersArray[tripIndex], -1, tripIndex);
+                }
+
+                for (int k = footPathOffsets[departurePosition]; k < footPathOffsets[departurePosition + 1]; k++) {
+                    int footPathSource = footPathSources[k];
+
+                    if (forbiddenVertices[footPathSource]) {
+                        continue;
+                    }
+
+                    if (forbiddenFootPaths.contains(footPathIndices[k])) {
+                        continue;
+                    }
+
+                    if (-(departureSeconds - footPathDurations[k]) < oppositeLatestDepartures[footPathSource]) {
+
+                        if (oppositeLatestDepartures[footPathSource] == Tools.MAX_ARRIVAL_TIME) {
+                            this.csaData.markStop(footPathSource);
+                        }
+                        oppositeLatestDepartures[footPathSource] = -(departureSeconds - footPathDurations[k]);
+                        this.csaData.setPointer(footPathSource, sequences[i], usedTripsWithPointersArray[tripIndex], footPathIndices[k], tripIndex);
+                    }
+                }
+            }
+        }
+    }
+
+
+    // Lower bounds of the travel times from the start given by the landmarks of the network, kept while the start does not change
+    private int[] lowerBoundsFrom(int source) {
+        Landmarks landmarks = this.network.getLandmarks();
+
+        if (landmarks == null || landmarks.size() == 0) {
+            return null;
+        }
+
+        if (this.lowerBoundsSource != source) {
+            if (this.lowerBounds == null) {
+                this.lowerBounds = new int[this.network.getStopPoints().size()];
+            }
+            landmarks.lowerBoundsFrom(source, this.lowerBounds);
+            this.lowerBoundsSource = source;
+        }
+
+        return this.lowerBounds;
+    }
+
+
+    // Latest departure time from the start found by the last launch, -1 if the target can not be reached
+    public int getLatestDeparture() {
+        int opposite = this.csaData.getEarliestArrivalArray()[this.start.getPosition()];
+        return opposite == Tools.MAX_ARRIVAL_TIME ? -1 : -opposite;
+    }
+
+
+    public Optional<Journey> extractResult() {
+
+        final ConnectionTable connections = this.network.getConnectionTable();
+        final FootPathTable footPaths = this.network.getFootPathTable();
+        final int[] tripOffsets = connections.getTripOffsets();
+        final int[] tripConnections = connections.getTripConnections();
+        final int[] enterConnections = this.csaData.getEnterConnections();
+        final int[] exitConnections = this.csaData.getExitConnections();
+        final int[] footPathIndices = this.csaData.getFootPathIndices();
+        final int[] pointerTrips = this.csaData.getPointerTrips();
+        final int target = this.end.getPosition();
+        int currentStop = this.start.getPosition();
+        Journey result = new Journey();
+
+        if (enterConnections[currentStop] == -1) {
+
+            for (int k = footPaths.getOffsets()[currentStop]; k < footPaths.getOffsets()[currentStop + 1]; k++) {
+                if (footPaths.getTargets()[k] == target) {
+                    Leg walkingLeg = new Leg(currentStop,
+                            this.arrivalSeconds - footPaths.getDurations()[k],
+                            target,
+                            this.arrivalSeconds,
+                            -1,
+                            true);
+                    result.getLegs().add(walkingLeg);
+                    result.setArrivalTime(walkingLeg.getArrivalTime());
+                    return Optional.of(result);
+                }
+            }
+
+            return Optional.empty();
+        }
+
+        while (enterConnections[currentStop] != -1) {
+
+            int tripOffset = tripOffsets[pointerTrips[currentStop]];
+            int enterConnection = tripConnections[tripOffset + enterConnections[currentStop]];
+            int footPathIndex = footPathIndices[currentStop];
+
+            if (footPathIndex != -1) {
+                Leg walkingLeg = new Leg(currentStop,
+                        connections.getDepartureSeconds()[enterConnection] - footPaths.getDurations()[footPathIndex] - Tools.TRANSFER_WINDOW,
+                        connections.getDeparturePositions()[enterConnection],
+                        connections.getDepartureSeconds()[enterConnection] - Tools.TRANSFER_WINDOW,
+                        -1,
+                        true);
+                result.getLegs().add(walkingLeg);
+            }
+
+            for (int i = enterConnections[currentStop]; i <= exitConnections[currentStop]; i++) {
+                int connection = tripConnections[tripOffset + i];
+                Leg currentLeg = new Leg(connections.getDeparturePositions()[connection],
+                        connections.getDepartureSeconds()[connection],
+                        connections.getArrivalPositions()[connection],
+                        connections.getArrivalSeconds()[connection],
+                        connections.getTripIndices()[connection],
+                        false);
+                result.getLegs().add(currentLeg);
+            }
+
+            int exitConnection = tripConnections[tripOffset + exitConnections[currentStop]];
+            currentStop = connections.getArrivalPositions()[exitConnection];
+        }
+
+        // The walk to the target leaves as soon as the last trip arrives
+        if (footPathIndices[currentStop] != -1) {
+            int duration = footPaths.getDurations()[footPathIndices[currentStop]];
+            int arrivalTime = result.getLegs().get(result.getLegs().size() - 1).getArrivalTime();
+            Leg walkingLeg = new Leg(currentStop,
+                    arrivalTime + Tools.TRANSFER_WINDOW,
+                    target,
+                    arrivalTime + Tools.TRANSFER_WINDOW + duration,
+                    -1,
+                    true);
+            result.getLegs().add(walkingLeg);
+        }
+
+        makeSimple(result);
+        result.setArrivalTime(result.getLegs().get(result.getLegs().size() - 1).getArrivalTime());
+        return Optional.of(result);
+    }
+
+
+    // Mirror of the simplification of CsaAlgorithmForKssp : the legs are read from the end and a stop point reached twice
+    // is only kept at its last arrival, the legs between both arrivals being removed
+    private void makeSimple(Journey journey) {
+
+        boolean simple = false;
+
+        while (!simple) {
+            simple = true;
+            Map<Integer, Integer> stopsToLegPositions = new HashMap<>();
+
+            for (int i = journey.getLegs().size() - 1; i >= 0; i--) {
+                Leg leg = journey.getLegs().get(i);
+                Integer position = stopsToLegPositions.get(leg.getArrival());
+
+                if (position != null) {
+                    journey.getLegs().subList(i + 1, position + 1).clear();
+                    simple = false;
+                    break;
+                }
+
+                stopsToLegPositions.put(leg.getArrival(), i);
+            }
+        }
+    }
+}
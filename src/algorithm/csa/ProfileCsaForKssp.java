@@ -1,25 +1,30 @@
 package algorithm.csa;
 
 import algorithm.ParetoCriteria;
+import algorithm.QueryBudget;
 import algorithm.Tools;
 import algorithm.kssp.Journey;
 import algorithm.kssp.Leg;
 import network.*;
+import tools.IntList;
 
 import java.util.*;
 
 public class ProfileCsaForKssp {
 
     private PublicTransitNetwork network;
-    private Map<Integer, Integer> arrivalWalkPaths = new HashMap<>();
+    private int[] arrivalWalkPaths;
     private int startIndex;
     private int endIndex;
     private StopPoint start;
     private StopPoint end;
-    private Map<String, Integer> vehicleJourneyLabels = new HashMap<>();
-    private Map<String, Connection> vehicleJourneyConnections = new HashMap<>();
-    List<List<ParetoCriteria>> stopLabels = new ArrayList<>();
-    List<List<ParetoCriteria>> footPathStopLabels = new ArrayList<>();
+    private int[] vehicleJourneyLabels;
+    private int[] vehicleJourneyConnections;
+    private IntList usedVehicleJourneys = new IntList();
+    private ProfileLabels stopLabels;
+    private ProfileLabels footPathStopLabels;
+    private long serviceDayMask;
+    private QueryBudget budget;
 
     public ProfileCsaForKssp(PublicTransitNetwork network,
                              StopPoint start,
@@ -29,23 +34,59 @@ public class ProfileCsaForKssp {
                              int endHour,
                              int endMinute) {
 
+        this(network, start, end, startHour, startMinute, endHour, endMinute, 0);
+    }
+
+
+    // Only the trips running on the service day of the network are used
+    public ProfileCsaForKssp(PublicTransitNetwork network,
+                             StopPoint start,
+                             StopPoint end,
+                             int startHour,
+                             int startMinute,
+                             int endHour,
+                             int endMinute,
+                             int serviceDay) {
+
         this.network = network;
-        this.startIndex = Tools.connectionBinarySearch(network.getConnections(), startHour, startMinute);
-        this.endIndex = Tools.connectionBinarySearch(network.getConnections(), endHour, endMinute);
+        this.serviceDayMask = 1L << serviceDay;
+        this.startIndex = Tools.connectionBinarySearch(network.getConnectionTable(), startHour, startMinute);
+        this.endIndex = Tools.connectionBinarySearch(network.getConnectionTable(), endHour, endMinute);
         this.start = start;
         this.end = end;
 
-        for (StopPoint ignored : network.getStopPoints()) {
-            stopLabels.add(new ArrayList<>());
-            footPathStopLabels.add(new ArrayList<>());
+        this.stopLabels = new ProfileLabels(network.getStopPoints().size(), false);
+        this.footPathStopLabels = new ProfileLabels(network.getStopPoints().size(), true);
+
+        this.vehicleJourneyLabels = new int[network.getTrips().size()];
+        this.vehicleJourneyConnections = new int[network.getTrips().size()];
+        Arrays.fill(this.vehicleJourneyLabels, Tools.MAX_ARRIVAL_TIME);
+
+        this.arrivalWalkPaths = new int[network.getStopPoints().size()];
+        Arrays.fill(this.arrivalWalkPaths, Tools.MAX_ARRIVAL_TIME);
+        FootPathTable inboundFootPaths = network.getInboundFootPathTable();
+        for (int k = inboundFootPaths.getOffsets()[end.getPosition()]; k < inboundFootPaths.getOffsets()[end.getPosition() + 1]; k++) {
+            this.arrivalWalkPaths[inboundFootPaths.getTargets()[k]] = inboundFootPaths.getDurations()[k];
         }
+        this.arrivalWalkPaths[end.getPosition()] = 0;
+    }
 
-        network.getInboundFootPaths().get(end.getPosition()).forEach(e -> arrivalWalkPaths.put(e.getFrom().getPosition(), e.getDuration()));
-        this.arrivalWalkPaths.put(end.getPosition(), 0);
+
+    // The scan stops when the budget is exhausted, the profiles being then incomplete
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
     }
 
 
-    public List<List<ParetoCriteria>> launch() {
+    public ProfileLabels launch() {
+
+        // Only the trips and the stops labelled by the previous launch are reset
+        for (int t = 0; t < usedVehicleJourneys.size(); t++) {
+            vehicleJourneyLabels[usedVehicleJourneys.get(t)] = Tools.MAX_ARRIVAL_TIME;
+        }
+        usedVehicleJourneys.clear();
+        stopLabels.clear();
+        footPathStopLabels.clear();
 
         profileCsaLoop();
 
@@ -55,39 +96,50 @@ public class ProfileCsaForKssp {
 
     private void profileCsaLoop() {
 
+        final ConnectionTable connections = network.getConnectionTable();
+        final int[] departurePositions = connections.getDeparturePositions();
+        final int[] arrivalPositions = connections.getArrivalPositions();
+        final int[] departureSecondsArray = connections.getDepartureSeconds();
+        final int[] arrivalSecondsArray = connections.getArrivalSeconds();
+        final int[] tripIndices = connections.getTripIndices();
+        final long[] tripServiceDays = network.getTripServiceDays();
+        final int[] inboundOffsets = network.getInboundFootPathTable().getOffsets();
+        final int[] inboundDepartures = network.getInboundFootPathTable().getTargets();
+        final int[] inboundDurations = network.getInboundFootPathTable().getDurations();
+        final QueryBudget budget = this.budget;
+
         for (int i = endIndex; i > startIndex; i--) {
-            Connection connection = network.getConnections().get(i);
+            if (budget != null && i % QueryBudget.CHECK_INTERVAL == 0 && !budget.spend(QueryBudget.CHECK_INTERVAL)) {
+                return;
+            }
+
+            if ((tripServiceDays[tripIndices[i]] & serviceDayMask) == 0) {
+                continue;
+            }
 
-            int nextStopPointPosition = connection.getArrivalPosition();
-            int currentStopPointPosition = connection.getDeparturePosition();
+            int nextStopPointPosition = arrivalPositions[i];
+            int currentStopPointPosition = departurePositions[i];
+            int departureSeconds = departureSecondsArray[i];
+            int arrivalSeconds = arrivalSecondsArray[i];
+            int tripIndex = tripIndices[i];
 
             int nearArrival = Tools.MAX_ARRIVAL_TIME;
-            if (arrivalWalkPaths.containsKey(nextStopPointPosition)) {
-                nearArrival = connection.getArrivalSeconds() + arrivalWalkPaths.get(nextStopPointPosition);
+            if (arrivalWalkPaths[nextStopPointPosition] != Tools.MAX_ARRIVAL_TIME) {
+                nearArrival = arrivalSeconds + arrivalWalkPaths[nextStopPointPosition];
             }
 
-            int sameVehicleJourneyArrival = vehicleJourneyLabels.getOrDefault(connection.getTripId(), Tools.MAX_ARRIVAL_TIME);
+            int sameVehicleJourneyArrival = vehicleJourneyLabels[tripIndex];
 
             int arrivalWithTransfer = Tools.MAX_ARRIVAL_TIME;
-            int j = 0;
-
-            while (j < stopLabels.get(nextStopPointPosition).size() &&
-                    stopLabels.get(nextStopPointPosition).get(j).getDepartureTime() < connection.getArrivalSeconds()) {
-                j++;
-            }
-            if (j < stopLabels.get(nextStopPointPosition).size()) {
-                arrivalWithTransfer = stopLabels.get(nextStopPointPosition).get(j).getArrivalTime();
+            int j = stopLabels.firstAtOrAfter(nextStopPointPosition, arrivalSeconds);
+            if (j < stopLabels.size(nextStopPointPosition)) {
+                arrivalWithTransfer = stopLabels.getArrivalTime(nextStopPointPosition, j);
             }
 
             int arrivalWithFootPathTransfer = Tools.MAX_ARRIVAL_TIME;
-            int k = 0;
-
-            while (k < footPathStopLabels.get(nextStopPointPosition).size() &&
-                    footPathStopLabels.get(nextStopPointPosition).get(k).getDepartureTime() < connection.getArrivalSeconds()) {
-                k++;
-            }
-            if (k < footPathStopLabels.get(nextStopPointPosition).size()) {
-                arrivalWithFootPathTransfer = footPathStopLabels.get(nextStopPointPosition).get(k).getArrivalTime();
+            int k = footPathStopLabels.firstAtOrAfter(nextStopPointPosition, arrivalSeconds);
+            if (k < footPathStopLabels.size(nextStopPointPosition)) {
+                arrivalWithFootPathTransfer = footPathStopLabels.getArrivalTime(nextStopPointPosition, k);
             }
 
             int bestArrival = Math.min(nearArrival, Math.min(sameVehicleJourneyArrival, Math.min(arrivalWithTransfer, arrivalWithFootPathTransfer)));
@@ -95,51 +147,27 @@ public class ProfileCsaForKssp {
             if (bestArrival != Tools.MAX_ARRIVAL_TIME) {
 
                 if (sameVehicleJourneyArrival > bestArrival) {
-                    vehicleJourneyLabels.put(connection.getTripId(), bestArrival);
-                    vehicleJourneyConnections.put(connection.getTripId(), connection);
+                    if (sameVehicleJourneyArrival == Tools.MAX_ARRIVAL_TIME) {
+                        usedVehicleJourneys.add(tripIndex);
+                    }
+                    vehicleJourneyLabels[tripIndex] = bestArrival;
+                    vehicleJourneyConnections[tripIndex] = i;
                 }
 
-                Leg leg = new Leg(connection.getDeparturePosition(),
-                        connection.getDepartureSeconds(),
-                        vehicleJourneyConnections.get(connection.getTripId()).getArrivalPosition(),
-                        vehicleJourneyConnections.get(connection.getTripId()).getArrivalSeconds(),
-                        connection.getTripIndex(),
-                        false);
-
-                ParetoCriteria currentObjectiveCriteria = new ParetoCriteria(connection.getDepartureSeconds() - Tools.TRANSFER_WINDOW,
-                        bestArrival,
-                        0,
-                        0,
-                        leg);
-
-                if (!domination(currentObjectiveCriteria, stopLabels.get(currentStopPointPosition))) {
+                int exitConnection = vehicleJourneyConnections[tripIndex];
 
-                    insertion(currentObjectiveCriteria, stopLabels.get(currentStopPointPosition));
+                if (stopLabels.add(currentStopPointPosition, departureSeconds - Tools.TRANSFER_WINDOW, bestArrival, exitConnection)) {
 
                     // We look at the possible walk paths from the arrival of the timetable
-                    for (FootPath destinationWalk : network.getInboundFootPaths().get(currentStopPointPosition)) {
+                    for (int w = inboundOffsets[currentStopPointPosition]; w < inboundOffsets[currentStopPointPosition + 1]; w++) {
+                        int walkDeparture = inboundDepartures[w];
+                        int walkDuration = inboundDurations[w];
 
-                        if (currentStopPointPosition == destinationWalk.getFrom().getPosition()) {
+                        if (currentStopPointPosition == walkDeparture) {
                             continue;
                         }
 
-                        Leg footPathLeg = new Leg(destinationWalk.getFrom().getPosition(),
-                                connection.getDepartureSeconds() - destinationWalk.getDuration(),
-                                destinationWalk.getTo().getPosition(),
-                                connection.getDepartureSeconds(),
-                                -1,
-                                true);
-
-                        ParetoCriteria currentWalkPathObjectiveCriteria = new ParetoCriteria(connection.getDepartureSeconds() - destinationWalk.getDuration() - Tools.TRANSFER_WINDOW,
-                                bestArrival,
-                                0,
-                                0,
-                                footPathLeg);
-
-                        if (!domination(currentWalkPathObjectiveCriteria, footPathStopLabels.get(destinationWalk.getFrom().getPosition()))) {
-
-                            insertion(currentWalkPathObjectiveCriteria, footPathStopLabels.get(destinationWalk.getFrom().getPosition()));
-                        }
+                        footPathStopLabels.add(walkDeparture, departureSeconds - walkDuration - Tools.TRANSFER_WINDOW, bestArrival, w);
                     }
                 }
             }
@@ -147,45 +175,6 @@ public class ProfileCsaForKssp {
     }
 
 
-    private void insertion(ParetoCriteria currentObjectiveCriteria,
-                           List<ParetoCriteria> objectiveCriteriaList) {
-
-        for (int k = 0; k < objectiveCriteriaList.size(); k++) {
-            if (objectiveCriteriaList.get(k).getDepartureTime() <= currentObjectiveCriteria.getDepartureTime()) {
-                if (currentObjectiveCriteria.dominateProfile(objectiveCriteriaList.get(k))) {
-                    objectiveCriteriaList.remove(k);
-                    k--;
-                } else if (k == objectiveCriteriaList.size() - 1) {
-                    objectiveCriteriaList.add(currentObjectiveCriteria);
-                    break;
-                }
-            } else {
-                objectiveCriteriaList.add(k, currentObjectiveCriteria);
-                break;
-            }
-        }
-
-        if (objectiveCriteriaList.size() == 0) {
-            objectiveCriteriaList.add(currentObjectiveCriteria);
-        }
-    }
-
-
-    private boolean domination(ParetoCriteria currentObjectiveCriteria,
-                               List<ParetoCriteria> objectiveCriteriaList) {
-
-        for (ParetoCriteria objectiveCriteria : objectiveCriteriaList) {
-            if (objectiveCriteria.getDepartureTime() >= currentObjectiveCriteria.getDepartureTime() || objectiveCriteria.getDepartureTime() == Integer.MIN_VALUE) {
-                if (objectiveCriteria.dominateProfile(currentObjectiveCriteria)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-
     public Optional<Journey> extractResult(int startPosition, int departureSeconds) {
         return extractResult(startPosition, departureSeconds, false, -1);
     }
@@ -265,7 +254,7 @@ public class ProfileCsaForKssp {
                 break;
             }
 
-            if (currentLeg.getLeg().getArrivalTime() + this.arrivalWalkPaths.getOrDefault(currentLeg.getLeg().getArrival(), Tools.MAX_ARRIVAL_TIME) == currentLeg.getArrivalTime()) {
+            if (currentLeg.getLeg().getArrivalTime() + this.arrivalWalkPaths[currentLeg.getLeg().getArrival()] == currentLeg.getArrivalTime()) {
                 Leg leg = new Leg(currentLeg.getLeg().getArrival(),
                         currentLeg.getLeg().getArrivalTime(),
                         this.end.getPosition(),
@@ -292,26 +281,14 @@ public class ProfileCsaForKssp {
     public ParetoCriteria earliestAfterTime(int stopPointPosition,
                                             int departureSeconds) {
 
-        ParetoCriteria earliestAfterTime = new ParetoCriteria();
-        for (ParetoCriteria paretoCriteria : this.stopLabels.get(stopPointPosition)) {
+        ParetoCriteria earliestAfterTime = stopLabel(stopPointPosition,
+                stopLabels.firstAtOrAfter(stopPointPosition, departureSeconds));
 
-            if (paretoCriteria.getDepartureTime() >= departureSeconds) {
-                earliestAfterTime = paretoCriteria;
-                break;
-            }
-        }
-
-        ParetoCriteria earliestAfterFootPathTime = new ParetoCriteria();
-        for (ParetoCriteria paretoCriteria : this.footPathStopLabels.get(stopPointPosition)) {
-
-            if (paretoCriteria.getDepartureTime() >= departureSeconds) {
-                earliestAfterFootPathTime = paretoCriteria;
-                break;
-            }
-        }
+        ParetoCriteria earliestAfterFootPathTime = footPathLabel(stopPointPosition,
+                footPathStopLabels.firstAtOrAfter(stopPointPosition, departureSeconds));
 
         ParetoCriteria earliestAfterNearArrival = new ParetoCriteria();
-        int walkDistanceToArrival = this.arrivalWalkPaths.getOrDefault(stopPointPosition, Tools.MAX_ARRIVAL_TIME);
+        int walkDistanceToArrival = this.arrivalWalkPaths[stopPointPosition];
         if (walkDistanceToArrival != Tools.MAX_ARRIVAL_TIME) {
             Leg leg = new Leg(stopPointPosition,
                     departureSeconds,
@@ -339,26 +316,21 @@ public class ProfileCsaForKssp {
                                                     int tripIndex,
                                                     int transferPenalty) {
 
-        ParetoCriteria earliestAfterTime = new ParetoCriteria();
-        for (ParetoCriteria paretoCriteria : this.stopLabels.get(stopPointPosition)) {
-
-            if (paretoCriteria.getDepartureTime() >= departureSeconds + (paretoCriteria.getLeg().getTrip() == tripIndex ? 0 : transferPenalty)) {
-                earliestAfterTime = paretoCriteria;
-                break;
-            }
+        // Only the labels staying in the trip can leave before the transfer penalty
+        final int[] tripIndices = network.getConnectionTable().getTripIndices();
+        int label = stopLabels.firstAtOrAfter(stopPointPosition, departureSeconds);
+        while (label < stopLabels.size(stopPointPosition) &&
+                stopLabels.getDepartureTime(stopPointPosition, label) < departureSeconds + transferPenalty &&
+                tripIndices[stopLabels.getId(stopPointPosition, label)] != tripIndex) {
+            label++;
         }
+        ParetoCriteria earliestAfterTime = stopLabel(stopPointPosition, label);
 
-        ParetoCriteria earliestAfterFootPathTime = new ParetoCriteria();
-        for (ParetoCriteria paretoCriteria : this.footPathStopLabels.get(stopPointPosition)) {
-
-            if (paretoCriteria.getDepartureTime() >= departureSeconds + transferPenalty) {
-                earliestAfterFootPathTime = paretoCriteria;
-                break;
-            }
-        }
+        ParetoCriteria earliestAfterFootPathTime = footPathLabel(stopPointPosition,
+                footPathStopLabels.firstAtOrAfter(stopPointPosition, departureSeconds + transferPenalty));
 
         ParetoCriteria earliestAfterNearArrival = new ParetoCriteria();
-        int walkDistanceToArrival = this.arrivalWalkPaths.getOrDefault(stopPointPosition, Tools.MAX_ARRIVAL_TIME);
+        int walkDistanceToArrival = this.arrivalWalkPaths[stopPointPosition];
         if (walkDistanceToArrival != Tools.MAX_ARRIVAL_TIME) {
             Leg leg = new Leg(stopPointPosition,
                     departureSeconds,
@@ -384,13 +356,48 @@ public class ProfileCsaForKssp {
     public ParetoCriteria earliestAfterTimeNotWalkPath(int stopPointPosition,
                                                        int departureSeconds) {
 
-        for (ParetoCriteria paretoCriteria : this.stopLabels.get(stopPointPosition)) {
+        return stopLabel(stopPointPosition, stopLabels.firstAtOrAfter(stopPointPosition, departureSeconds));
+    }
 
-            if (paretoCriteria.getDepartureTime() >= departureSeconds) {
-                return paretoCriteria;
-            }
+
+    // Label of the stop with the trip leg leading to its exit connection, an empty criteria past the last label
+    private ParetoCriteria stopLabel(int stopPointPosition, int index) {
+
+        if (index == stopLabels.size(stopPointPosition)) {
+            return new ParetoCriteria();
+        }
+
+        final ConnectionTable connections = network.getConnectionTable();
+        int departureTime = stopLabels.getDepartureTime(stopPointPosition, index);
+        int exitConnection = stopLabels.getId(stopPointPosition, index);
+        Leg leg = new Leg(stopPointPosition,
+                departureTime + Tools.TRANSFER_WINDOW,
+                connections.getArrivalPositions()[exitConnection],
+                connections.getArrivalSeconds()[exitConnection],
+                connections.getTripIndices()[exitConnection],
+                false);
+
+        return new ParetoCriteria(departureTime, stopLabels.getArrivalTime(stopPointPosition, index), 0, 0, leg);
+    }
+
+
+    // Label of the stop with the foot path leg walked to a departure of the profile
+    private ParetoCriteria footPathLabel(int stopPointPosition, int index) {
+
+        if (index == footPathStopLabels.size(stopPointPosition)) {
+            return new ParetoCriteria();
         }
 
-        return new ParetoCriteria();
+        final FootPathTable inboundFootPaths = network.getInboundFootPathTable();
+        int departureTime = footPathStopLabels.getDepartureTime(stopPointPosition, index);
+        int footPath = footPathStopLabels.getId(stopPointPosition, index);
+        Leg leg = new Leg(stopPointPosition,
+                departureTime + Tools.TRANSFER_WINDOW,
+                inboundFootPaths.sourceOf(footPath),
+                departureTime + Tools.TRANSFER_WINDOW + inboundFootPaths.getDurations()[footPath],
+                -1,
+                true);
+
+        return new ParetoCriteria(departureTime, footPathStopLabels.getArrivalTime(stopPointPosition, index), 0, 0, leg);
     }
 }
@@ -0,0 +1,172 @@
+package algorithm.csa;
+
+import tools.IntList;
+
+import java.util.Arrays;
+
+// Pareto profiles of the stops for the profile CSA, a label being a departure time, an arrival time and the id of its
+// first leg : the exit connection of the trip boarded or the index of the inbound foot path walked.
+// The labels of a stop are sorted by increasing departure and arrival times, they are kept at the end of growable
+// arrays since the backward scan mostly inserts them before all the others
+public class ProfileLabels {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[][] departureTimes;
+    private int[][] arrivalTimes;
+    private int[][] ids;
+    private int[] heads;
+    private boolean footPaths;
+    private IntList labelledStops = new IntList();
+
+    // The foot path labels do not dominate the labels equal to them
+    public ProfileLabels(int stopCount, boolean footPaths) {
+        this.departureTimes = new int[stopCount][];
+        this.arrivalTimes = new int[stopCount][];
+        this.ids = new int[stopCount][];
+        this.heads = new int[stopCount];
+        this.footPaths = footPaths;
+        Arrays.fill(this.departureTimes, EMPTY);
+        Arrays.fill(this.arrivalTimes, EMPTY);
+        Arrays.fill(this.ids, EMPTY);
+    }
+
+    public int size(int stopPosition) {
+        return departureTimes[stopPosition].length - heads[stopPosition];
+    }
+
+    public int getDepartureTime(int stopPosition, int index) {
+        return departureTimes[stopPosition][heads[stopPosition] + index];
+    }
+
+    public int getArrivalTime(int stopPosition, int index) {
+        return arrivalTimes[stopPosition][heads[stopPosition] + index];
+    }
+
+    public int getId(int stopPosition, int index) {
+        return ids[stopPosition][heads[stopPosition] + index];
+    }
+
+    // Empties the profiles of the stops labelled since the last clear
+    public void clear() {
+        for (int i = 0; i < labelledStops.size(); i++) {
+            int stopPosition = labelledStops.get(i);
+            heads[stopPosition] = departureTimes[stopPosition].length;
+        }
+        labelledStops.clear();
+    }
+
+    // Index of the first label of the stop leaving at or after the time, the size of the profile if there is none
+    public int firstAtOrAfter(int stopPosition, int time) {
+        return search(departureTimes[stopPosition], heads[stopPosition], time) - heads[stopPosition];
+    }
+
+    // Adds the label unless a label of the stop leaving at or after it arrives at or before it,
+    // the labels leaving at or before it and arriving at or after it are removed
+    public boolean add(int stopPosition, int departureTime, int arrivalTime, int id) {
+        int[] departures = departureTimes[stopPosition];
+        int[] arrivals = arrivalTimes[stopPosition];
+        int end = departures.length;
+
+        int first = search(departures, heads[stopPosition], departureTime);
+        if (first < end &&
+                (arrivals[first] < arrivalTime ||
+                        (arrivals[first] == arrivalTime && (!footPaths || departures[first] != departureTime)))) {
+            return false;
+        }
+
+        int after = first;
+        while (after < end && departures[after] == departureTime) {
+            after++;
+        }
+
+        int dominated = after;
+        while (dominated > heads[stopPosition] && arrivals[dominated - 1] >= arrivalTime &&
+                !(departures[dominated - 1] == departureTime && arrivals[dominated - 1] == arrivalTime)) {
+            dominated--;
+        }
+
+        remove(stopPosition, dominated, after);
+        insert(stopPosition, after, departureTime, arrivalTime, id);
+
+        return true;
+    }
+
+
+    // First position at or after the head whose departure time is at or after the time
+    private static int search(int[] departures, int head, int time) {
+        int low = head;
+        int high = departures.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (departures[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+
+    // Removes the labels between the positions by moving the labels before them toward the end
+    private void remove(int stopPosition, int from, int to) {
+        int count = to - from;
+
+        if (count == 0) {
+            return;
+        }
+
+        int head = heads[stopPosition];
+        System.arraycopy(departureTimes[stopPosition], head, departureTimes[stopPosition], head + count, from - head);
+        System.arraycopy(arrivalTimes[stopPosition], head, arrivalTimes[stopPosition], head + count, from - head);
+        System.arraycopy(ids[stopPosition], head, ids[stopPosition], head + count, from - head);
+        heads[stopPosition] = head + count;
+    }
+
+
+    // Inserts the label before the position, the labels before it being moved toward the head
+    private void insert(int stopPosition, int position, int departureTime, int arrivalTime, int id) {
+        if (heads[stopPosition] == departureTimes[stopPosition].length) {
+            labelledStops.add(stopPosition);
+        }
+
+        if (heads[stopPosition] == 0) {
+            position += grow(stopPosition);
+        }
+
+        int head = heads[stopPosition];
+        System.arraycopy(departureTimes[stopPosition], head, departureTimes[stopPosition], head - 1, position - head);
+        System.arraycopy(arrivalTimes[stopPosition], head, arrivalTimes[stopPosition], head - 1, position - head);
+        System.arraycopy(ids[stopPosition], head, ids[stopPosition], head - 1, position - head);
+        departureTimes[stopPosition][position - 1] = departureTime;
+        arrivalTimes[stopPosition][position - 1] = arrivalTime;
+        ids[stopPosition][position - 1] = id;
+        heads[stopPosition] = head - 1;
+    }
+
+
+    // Doubles the capacity of the stop, the labels staying at the end of the arrays, and returns their shift
+    private int grow(int stopPosition) {
+        int length = departureTimes[stopPosition].length;
+        int capacity = Math.max(length * 2, 4);
+        int shift = capacity - length;
+
+        departureTimes[stopPosition] = shifted(departureTimes[stopPosition], capacity, shift);
+        arrivalTimes[stopPosition] = shifted(arrivalTimes[stopPosition], capacity, shift);
+        ids[stopPosition] = shifted(ids[stopPosition], capacity, shift);
+        heads[stopPosition] = shift;
+
+        return shift;
+    }
+
+
+    private static int[] shifted(int[] values, int capacity, int shift) {
+        int[] result = new int[capacity];
+        System.arraycopy(values, 0, result, shift, values.length);
+        return result;
+    }
+}
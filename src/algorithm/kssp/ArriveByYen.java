@@ -0,0 +1,314 @@
+package algorithm.kssp;
+
+import algorithm.csa.LatestDepartureCsaForKssp;
+import network.ConnectionPairIndex;
+import network.FootPathTable;
+import network.PublicTransitNetwork;
+import network.StopPoint;
+import tools.IndexSet;
+import tools.IntList;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Yen's algorithm for the journeys arriving before a deadline, the latest departures first.
+// It mirrors Yen : the legs are read from the end of the journeys, the spur paths go from the start to a spur node
+// before the departure of the kept suffix, and the deviation index of a journey is the number of legs of this suffix
+public class ArriveByYen {
+
+    private PublicTransitNetwork network;
+    private LatestDepartureCsaForKssp csaKssp;
+    private StopPoint start;
+    private StopPoint end;
+    private int arrivalHour;
+    private int arrivalMinute;
+    private int counterUsedTrees = 0;
+    private PriorityQueue<Journey> heapSortedPaths = new PriorityQueue<>(Comparator.comparingInt((Journey e) -> e.getLegs().get(0).getDepartureTime()).reversed());
+    private List<Journey> yieldedPaths = new ArrayList<>();
+    private List<IntList> forbiddenEdges = new ArrayList<>();
+    private IndexSet forbiddenEdgeSet;
+    private List<IntList> forbiddenFootPaths = new ArrayList<>();
+    private IndexSet forbiddenFootPathSet;
+    private boolean[] forbiddenVertices;
+
+    public ArriveByYen(PublicTransitNetwork network,
+                       StopPoint start,
+                       StopPoint end,
+                       int arrivalHour,
+                       int arrivalMinute) {
+
+        this(network, start, end, 0, arrivalHour, arrivalMinute);
+    }
+
+
+    // Query on a given day of the service days of the network
+    public ArriveByYen(PublicTransitNetwork network,
+                       StopPoint start,
+                       StopPoint end,
+                       LocalDate date,
+                       int arrivalHour,
+                       int arrivalMinute) {
+
+        this(network, start, end, network.getServiceDay(date), arrivalHour, arrivalMinute);
+    }
+
+
+    private ArriveByYen(PublicTransitNetwork network,
+                        StopPoint start,
+                        StopPoint end,
+                        int serviceDay,
+                        int arrivalHour,
+                        int arrivalMinute) {
+
+        this.network = network;
+        this.csaKssp = new LatestDepartureCsaForKssp(network, start, end, arrivalHour * 3600 + arrivalMinute * 60, serviceDay);
+        this.start = start;
+        this.end = end;
+        this.arrivalHour = arrivalHour;
+        this.arrivalMinute = arrivalMinute;
+        this.forbiddenVertices = new boolean[network.getStopPoints().size()];
+        this.forbiddenEdgeSet = new IndexSet(network.getConnectionTable().size());
+        this.forbiddenFootPathSet = new IndexSet(network.getFootPathTable().size());
+    }
+
+
+    public boolean initialize() {
+        if (this.start != this.end) {
+            csaKssp.launch();
+            counterUsedTrees++;
+
+            Optional<Journey> journey = csaKssp.extractResult();
+            if (journey.isPresent()) {
+                journey.get().setDeviationIndex(0);
+                heapSortedPaths.add(journey.get());
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    public Optional<Journey> nextPath() {
+
+        if (heapSortedPaths.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Journey journey = heapSortedPaths.poll();
+
+        computeDeviations(journey);
+
+        yieldedPaths.add(journey);
+        return Optional.of(journey);
+    }
+
+
+    public List<Journey> returnResults(int k) {
+
+        List<Journey> result = new ArrayList<>();
+
+        if (initialize()) {
+            int counter = 0;
+            while (counter < k) {
+                Optional<Journey> res = nextPath();
+                counter++;
+
+                if (res.isPresent()) {
+                    result.add(res.get());
+                } else {
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    // Leg of the journey at the index counted from its last leg
+    private static Leg legFromEnd(List<Leg> legs, int index) {
+        return legs.get(legs.size() - 1 - index);
+    }
+
+
+    private void computeDeviations(Journey journey) {
+
+        List<Leg> previousPath = journey.getLegs();
+        int previousPathSize = journey.getLegs().size();
+        int deviationIndex = journey.getDeviationIndex();
+
+        forbiddenEdges.clear();
+        forbiddenFootPaths.clear();
+        previousPath.forEach(e -> forbiddenEdges.add(new IntList()));
+        previousPath.forEach(e -> forbiddenFootPaths.add(new IntList()));
+
+        for (int i = deviationIndex; i < previousPathSize; i++) {
+            Leg leg = legFromEnd(previousPath, i);
+            if (leg.isFootpath()) {
+                addFootPath(forbiddenFootPaths.get(i), leg.getDeparture(), leg.getArrival());
+            } else {
+                removeEdges(forbiddenEdges.get(i), leg.getDeparture(), leg.getArrival(), leg.getTrip());
+            }
+        }
+
+        // We remove the last different edge of paths that share the same suffix
+        for (Journey yieldedPath : yieldedPaths) {
+
+            List<Leg> yieldedLegs = yieldedPath.getLegs();
+            int jMax = previousPathSize < yieldedLegs.size() ? previousPathSize : yieldedLegs.size() - 1;
+            int j = 0;
+
+            while (j < jMax &&
+                    (legFromEnd(previousPath, j).getDeparture() == legFromEnd(yieldedLegs, j).getDeparture() &&
+                            legFromEnd(previousPath, j).getArrival() == legFromEnd(yieldedLegs, j).getArrival() &&
+                            legFromEnd(previousPath, j).getTrip() == legFromEnd(yieldedLegs, j).getTrip())) {
+                j++;
+            }
+
+            if (deviationIndex <= j && j < yieldedLegs.size()) {
+                // j is the first index from the end at which the paths differ
+                Leg leg = legFromEnd(yieldedLegs, j);
+                if (leg.isFootpath()) {
+                    addFootPath(forbiddenFootPaths.get(j), leg.getDeparture(), leg.getArrival());
+                } else {
+                    removeEdges(forbiddenEdges.get(j), leg.getDeparture(), leg.getArrival(), leg.getTrip());
+                }
+            }
+        }
+
+        for (int i = 0; i < network.getStopPoints().size(); i++) {
+            forbiddenVertices[i] = false;
+        }
+
+        for (int i = 1; i < deviationIndex; i++) {
+            forbiddenVertices[legFromEnd(previousPath, i - 1).getArrival()] = true;
+        }
+
+        // A spur node left by a walk and reached by a trip can not be reached by another walk
+        for (int i = deviationIndex; i < previousPathSize - 1; i++) {
+            if (!legFromEnd(previousPath, i).isFootpath() && nextWalk(previousPath, i)) {
+                int spurNode = legFromEnd(previousPath, i).getArrival();
+                FootPathTable inboundFootPaths = network.getInboundFootPathTable();
+                for (int k = inboundFootPaths.getOffsets()[spurNode]; k < inboundFootPaths.getOffsets()[spurNode + 1]; k++) {
+                    forbiddenFootPaths.get(i).add(inboundFootPaths.getReversedIndices()[k]);
+                }
+            }
+        }
+
+        for (int i = deviationIndex; i < previousPathSize - 1; i++) {
+
+            if (i > 0) {
+                forbiddenVertices[legFromEnd(previousPath, i - 1).getArrival()] = true;
+            }
+
+            int spurNode = legFromEnd(previousPath, i).getArrival();
+
+            forbiddenEdgeSet.clear();
+            forbiddenEdgeSet.addAll(forbiddenEdges.get(i));
+            forbiddenFootPathSet.clear();
+            forbiddenFootPathSet.addAll(forbiddenFootPaths.get(i));
+
+            csaKssp.updateStartAndEnd(this.start, this.network.getStopPoints().get(spurNode), nextDepartureTime(previousPath, i));
+            csaKssp.launch(forbiddenVertices, forbiddenEdgeSet, forbiddenFootPathSet, !legFromEnd(previousPath, i).isFootpath() && nextWalk(previousPath, i));
+            counterUsedTrees++;
+
+            Optional<Journey> newJourney = csaKssp.extractResult();
+
+            if (newJourney.isPresent() &&
+                    newJourney.get().getLegs().size() == 1 &&
+                    newJourney.get().getLegs().get(0).isFootpath() &&
+                    forbiddenFootPathSet.contains(network.getFootPathTable().indexOf(newJourney.get().getLegs().get(0).getDeparture(), newJourney.get().getLegs().get(0).getArrival()))) {
+                continue;
+            }
+
+            if (newJourney.isPresent() && correctJourney(newJourney.get())) {
+
+                List<Leg> legs = newJourney.get().getLegs();
+
+                // We shift the arrival time of the walk paths so that it is the latest possible
+                if (legs.get(legs.size() - 1).isFootpath()) {
+                    Leg lastLeg = legs.get(legs.size() - 1);
+                    int newArrivalSeconds = nextDepartureTime(previousPath, i);
+                    lastLeg.update(lastLeg.getDeparture(),
+                            newArrivalSeconds - (lastLeg.getArrivalTime() - lastLeg.getDepartureTime()),
+                            lastLeg.getArrival(),
+                            newArrivalSeconds,
+                            lastLeg.getTrip(),
+                            lastLeg.isFootpath());
+                }
+
+                newJourney.get().setDeviationIndex(i);
+                legs.addAll(previousPath.subList(previousPathSize - i, previousPathSize));
+                newJourney.get().setArrivalTime(legs.get(legs.size() - 1).getArrivalTime());
+                heapSortedPaths.add(newJourney.get());
+            } else if (newJourney.isPresent() && !correctJourney(newJourney.get())) {
+
+                List<Leg> legs = newJourney.get().getLegs();
+
+                // If the journey is not extracted properly, we forbid the last foot path and try to compute a deviation one more time
+                if (legs.size() > 1 &&
+                        legs.get(legs.size() - 1).isFootpath() &&
+                        legs.get(legs.size() - 2).isFootpath()) {
+                    addFootPath(forbiddenFootPaths.get(i), legs.get(legs.size() - 2).getDeparture(), legs.get(legs.size() - 2).getArrival());
+                    i--;
+                }
+            }
+        }
+    }
+
+
+    private boolean nextWalk(List<Leg> previousPath, int i) {
+        return i != 0 && legFromEnd(previousPath, i - 1).isFootpath();
+    }
+
+
+    private int nextDepartureTime(List<Leg> previousPath, int i) {
+        return i != 0 ? legFromEnd(previousPath, i - 1).getDepartureTime() : arrivalHour * 3600 + arrivalMinute * 60;
+    }
+
+
+    private void addFootPath(IntList forbiddenFootPath, int departure, int arrival) {
+        int index = network.getFootPathTable().indexOf(departure, arrival);
+
+        if (index != -1) {
+            forbiddenFootPath.add(index);
+        }
+    }
+
+
+    private void removeEdges(IntList forbiddenEdge, int departure, int arrival, int tripIndex) {
+        ConnectionPairIndex index = network.getConnectionPairIndex();
+        int row = index.tripPairRow(departure, arrival, tripIndex);
+
+        if (row == -1) {
+            return;
+        }
+
+        for (int k = index.getTripPairOffsets()[row]; k < index.getTripPairOffsets()[row + 1]; k++) {
+            forbiddenEdge.add(index.getTripPairConnections()[k]);
+        }
+    }
+
+
+    public boolean correctJourney(Journey journey) {
+
+        for (int i = 0; i < journey.getLegs().size() - 1; i++) {
+            if (journey.getLegs().get(i).getArrival() != journey.getLegs().get(i + 1).getDeparture() ||
+                    journey.getLegs().get(i).getArrivalTime() > journey.getLegs().get(i + 1).getDepartureTime() ||
+                    (journey.getLegs().get(i).isFootpath() && journey.getLegs().get(i + 1).isFootpath())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getCounterUsedTrees() {
+        return counterUsedTrees;
+    }
+
+    public List<Journey> getYieldedPaths() {
+        return yieldedPaths;
+    }
+}
@@ -0,0 +1,120 @@
+package algorithm.kssp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Prefix tree of the yielded journeys, two legs being the same edge of the tree when they have the same departure, arrival and trip.
+// Yen forbids at each index of a spur path the first leg at which the yielded journeys sharing its prefix differ from it,
+// these legs are the other children of the nodes along the path instead of a comparison with every yielded journey
+public class JourneyTrie {
+
+    private static final int WALKED = 1;
+    private static final int RIDDEN = 2;
+
+    private Node root = new Node(-1, -1, -1);
+    private int size;
+
+    // Receives a leg to forbid at an index of the path, a leg reached both walking and riding being given twice
+    public interface DeviationVisitor {
+        void visit(int index, int departure, int arrival, int trip, boolean footpath);
+    }
+
+    public void add(Journey journey) {
+        Node node = root;
+
+        for (Leg leg : journey.getLegs()) {
+            Node child = node.child(leg.getDeparture(), leg.getArrival(), leg.getTrip());
+
+            if (child == null) {
+                child = new Node(leg.getDeparture(), leg.getArrival(), leg.getTrip());
+                node.children.add(child);
+            }
+
+            child.legKinds |= kind(leg);
+            node = child;
+        }
+
+        List<Leg> legs = journey.getLegs();
+        if (!legs.isEmpty()) {
+            node.endKinds |= kind(legs.get(legs.size() - 1));
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Visits the first different legs of the journeys sharing a prefix with the path, at the indices of the path between
+    // fromIndex and toIndex included. A journey which is a prefix of the path gives its last leg at the index of this leg
+    public void forEachDeviation(List<Leg> path, int fromIndex, int toIndex, DeviationVisitor visitor) {
+        Node node = root;
+
+        for (int depth = 0; depth <= path.size() && node != null; depth++) {
+
+            if (node.endKinds != 0 && depth - 1 >= fromIndex && depth - 1 <= toIndex) {
+                visit(depth - 1, node, node.endKinds, visitor);
+            }
+
+            Leg leg = depth < path.size() ? path.get(depth) : null;
+            Node next = null;
+
+            for (Node child : node.children) {
+                if (leg != null && child.is(leg.getDeparture(), leg.getArrival(), leg.getTrip())) {
+                    next = child;
+                } else if (depth >= fromIndex && depth <= toIndex) {
+                    visit(depth, child, child.legKinds, visitor);
+                }
+            }
+
+            node = next;
+        }
+    }
+
+
+    private static void visit(int index, Node node, int kinds, DeviationVisitor visitor) {
+        if ((kinds & WALKED) != 0) {
+            visitor.visit(index, node.departure, node.arrival, node.trip, true);
+        }
+        if ((kinds & RIDDEN) != 0) {
+            visitor.visit(index, node.departure, node.arrival, node.trip, false);
+        }
+    }
+
+
+    private static int kind(Leg leg) {
+        return leg.isFootpath() ? WALKED : RIDDEN;
+    }
+
+
+    // A node is reached by the leg of its departure, arrival and trip, the kinds are the ones of these legs
+    // and of the last legs of the journeys ending at the node
+    private static class Node {
+
+        private int departure;
+        private int arrival;
+        private int trip;
+        private int legKinds;
+        private int endKinds;
+        private List<Node> children = new ArrayList<>(2);
+
+        private Node(int departure, int arrival, int trip) {
+            this.departure = departure;
+            this.arrival = arrival;
+            this.trip = trip;
+        }
+
+        private boolean is(int departure, int arrival, int trip) {
+            return this.departure == departure && this.arrival == arrival && this.trip == trip;
+        }
+
+        private Node child(int departure, int arrival, int trip) {
+            for (Node child : children) {
+                if (child.is(departure, arrival, trip)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -2,24 +2,34 @@ package algorithm.kssp;
 
 import algorithm.KsspResultAndMetrics;
 import algorithm.ParetoCriteria;
+import algorithm.QueryBudget;
 import algorithm.Tools;
 import algorithm.csa.CsaAlgorithmForKssp;
 import algorithm.csa.ProfileCsaForKssp;
 import com.google.common.base.Stopwatch;
-import network.Connection;
-import network.FootPath;
+import network.ConnectionPairIndex;
+import network.ConnectionTable;
+import network.FootPathTable;
+import network.Landmarks;
 import network.PublicTransitNetwork;
 import network.StopPoint;
+import tools.IndexSet;
+import tools.IntList;
 import tools.Pair;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 public class PostPonedYen {
 
+    private static final IntList NO_INDICES = new IntList(1);
+
     private PublicTransitNetwork network;
-    private CsaAlgorithmForKssp csaKssp;
     private ProfileCsaForKssp pcsaKssp;
+    private int serviceDay;
     private StopPoint start;
     private StopPoint end;
     private int departureHour;
@@ -27,32 +37,83 @@ public class PostPonedYen {
     private int counterUsedTrees = 0;
     private PriorityQueue<Journey> heapSortedPaths = new PriorityQueue<>(Comparator.comparingInt(Journey::getArrivalTime));
     private List<Journey> yieldedPaths = new ArrayList<>();
-    private List<Integer> forbiddenEdges = new ArrayList<>();
-    private Set<Pair<Integer, Integer>> forbiddenFootPaths = new HashSet<>();
-    private List<Set<Pair<Integer, Integer>>> forbiddenFootPathsPerLeg = new ArrayList<>();
-    private List<Set<Leg>> forbiddenConnectionsPerLeg = new ArrayList<>();
-    private boolean[] forbiddenVertices;
+    private JourneyTrie yieldedTrie = new JourneyTrie();
+    private IndexSet forbiddenEdges;
+    private IndexSet forbiddenFootPaths;
+    private List<IntList> forbiddenFootPathsPerLeg = new ArrayList<>();
+    private List<IntList> forbiddenConnectionsPerLeg = new ArrayList<>();
+    private RepairWorkspace repairWorkspace;
+    private long serviceDayMask;
+    private ForkJoinPool pool;
+    private QueryBudget budget;
+    private int[] lowerBounds;
+    private Map<Journey, Repair> speculativeRepairs = new IdentityHashMap<>();
+
+    public PostPonedYen(PublicTransitNetwork network,
+                        StopPoint start,
+                        StopPoint end,
+                        int departureHour,
+                        int departureMinute) {
+
+        this(network, start, end, 0, departureHour, departureMinute);
+    }
 
+
+    // Query on a given day of the service days of the network
     public PostPonedYen(PublicTransitNetwork network,
                         StopPoint start,
                         StopPoint end,
+                        LocalDate date,
                         int departureHour,
                         int departureMinute) {
 
+        this(network, start, end, network.getServiceDay(date), departureHour, departureMinute);
+    }
+
+
+    private PostPonedYen(PublicTransitNetwork network,
+                         StopPoint start,
+                         StopPoint end,
+                         int serviceDay,
+                         int departureHour,
+                         int departureMinute) {
+
         this.network = network;
-        this.csaKssp = new CsaAlgorithmForKssp(network, start, end, departureHour * 3600 + departureMinute * 60);
-        this.pcsaKssp = new ProfileCsaForKssp(network, start, end, departureHour, departureMinute, 48, 0);
+        this.pcsaKssp = new ProfileCsaForKssp(network, start, end, departureHour, departureMinute, 48, 0, serviceDay);
+        this.serviceDay = serviceDay;
+        this.serviceDayMask = 1L << serviceDay;
         this.start = start;
         this.end = end;
         this.departureHour = departureHour;
         this.departureMinute = departureMinute;
-        this.forbiddenVertices = new boolean[network.getStopPoints().size()];
+        this.repairWorkspace = new RepairWorkspace(network);
+        this.forbiddenEdges = new IndexSet(network.getConnectionTable().size());
+        this.forbiddenFootPaths = new IndexSet(network.getFootPathTable().size());
+    }
+
+
+    // The first non-simple journeys of the heap are then repaired in advance on the pool while the repairs are done in heap order,
+    // a repair being used only if no path has been yielded since it was started
+    public void setSpeculativeRepairs(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    // The scans of the query stop when the budget is exhausted, no journey being yielded afterwards
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
+        this.pcsaKssp.setBudget(budget);
     }
 
 
     public boolean initialize() {
         if (this.start != this.end) {
             this.pcsaKssp.launch();
+
+            if (exhausted()) {
+                return false;
+            }
+
             Optional<Journey> journey = this.pcsaKssp.extractResult(this.start.getPosition(),
                     this.departureHour * 3600 + this.departureMinute * 60);
             if (journey.isPresent()) {
@@ -68,21 +129,85 @@ public class PostPonedYen {
 
     public Optional<Journey> nextPath() {
 
-        while (!heapSortedPaths.isEmpty()) {
+        if (!repairNonSimplePaths()) {
+            return Optional.empty();
+        }
+
+        Journey path = heapSortedPaths.poll();
+        yieldPath(path);
+        addMinExtensions(path);
+
+        return Optional.of(path);
+    }
+
+
+    // Repairs the journeys of the top of the heap until the best one is simple, false if the heap is emptied or the budget exhausted
+    private boolean repairNonSimplePaths() {
+
+        while (!heapSortedPaths.isEmpty() && !exhausted()) {
+
+            if (isSimple(heapSortedPaths.peek())) {
+                return true;
+            }
 
             Journey prevPath = heapSortedPaths.poll();
+            if (pool != null) {
+                speculateRepairs();
+            }
+            repair(prevPath);
+        }
+
+        return false;
+    }
 
-            if (isSimple(prevPath)) {
-                yieldedPaths.add(prevPath);
-                addMinExtensions(prevPath);
 
-                return Optional.of(prevPath);
-            } else {
-                repair(prevPath);
+    // Only the speculative repairs of the journeys sharing the legs before their deviation index with the path were computed
+    // without a forbidden leg, they are cancelled while the others stay valid
+    private void yieldPath(Journey path) {
+        yieldedPaths.add(path);
+        yieldedTrie.add(path);
+
+        speculativeRepairs.entrySet().removeIf(entry -> {
+            if (sharesPrefix(entry.getKey(), path)) {
+                cancel(entry.getValue());
+                return true;
+            }
+            return false;
+        });
+    }
+
+
+    private static boolean sharesPrefix(Journey journey, Journey path) {
+
+        int deviationIndex = journey.getDeviationIndex();
+
+        if (path.getLegs().size() < deviationIndex) {
+            return false;
+        }
+
+        for (int i = 0; i < deviationIndex; i++) {
+            Leg leg = journey.getLegs().get(i);
+            Leg pathLeg = path.getLegs().get(i);
+
+            if (leg.getDeparture() != pathLeg.getDeparture() || leg.getArrival() != pathLeg.getArrival() || leg.getTrip() != pathLeg.getTrip()) {
+                return false;
             }
         }
 
-        return Optional.empty();
+        return true;
+    }
+
+
+    // The scan of a running repair stops at its next check
+    private static void cancel(Repair repair) {
+        repair.budget.cancel();
+        repair.task.cancel(false);
+    }
+
+
+    private void cancelSpeculativeRepairs() {
+        speculativeRepairs.values().forEach(PostPonedYen::cancel);
+        speculativeRepairs.clear();
     }
 
 
@@ -103,11 +228,78 @@ public class PostPonedYen {
                 }
             }
         }
+        cancelSpeculativeRepairs();
 
         return result;
     }
 
 
+    // The best journeys found before the budget is exhausted, at most k
+    public List<Journey> returnResults(int k, QueryBudget budget) {
+
+        List<Journey> result = new ArrayList<>();
+        iterator(k, budget).forEachRemaining(result::add);
+
+        return result;
+    }
+
+
+    // Iterates over the k first journeys, each one being handed over as soon as it is the best candidate and simple : its
+    // extensions are only computed when the next journey is asked for. The iteration ends early when the budget is exhausted,
+    // the journeys already handed over being final
+    public Iterator<Journey> iterator(int k, QueryBudget budget) {
+
+        setBudget(budget);
+
+        return new Iterator<Journey>() {
+
+            private boolean initialized;
+            private Journey pending;
+            private int counter;
+
+            @Override
+            public boolean hasNext() {
+                if (counter >= k) {
+                    cancelSpeculativeRepairs();
+                    return false;
+                }
+
+                if (!initialized) {
+                    initialized = true;
+
+                    if (!initialize()) {
+                        return false;
+                    }
+                }
+
+                if (pending != null) {
+                    addMinExtensions(pending);
+                    pending = null;
+                }
+
+                if (!repairNonSimplePaths()) {
+                    cancelSpeculativeRepairs();
+                    return false;
+                }
+
+                return true;
+            }
+
+            @Override
+            public Journey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                pending = heapSortedPaths.poll();
+                yieldPath(pending);
+                counter++;
+                return pending;
+            }
+        };
+    }
+
+
     public List<KsspResultAndMetrics> returnResultsForBenchmark(int k, List<Integer> values) {
 
         List<KsspResultAndMetrics> result = new ArrayList<>();
@@ -131,6 +323,7 @@ public class PostPonedYen {
                 }
             }
         }
+        cancelSpeculativeRepairs();
         stopwatch.stop();
 
         if (result.size() < values.size()) {
@@ -146,6 +339,11 @@ public class PostPonedYen {
     }
 
 
+    private boolean exhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+
     private boolean isSimple(Journey journey) {
 
         Set<Integer> stops = new HashSet<>();
@@ -166,42 +364,30 @@ public class PostPonedYen {
 
         List<Leg> previousPath = journey.getLegs();
         int deviationIndex = journey.getDeviationIndex();
+        FootPathTable footPaths = network.getFootPathTable();
+        ConnectionTable connections = network.getConnectionTable();
         List<Leg> prefix = new ArrayList<>(previousPath.subList(0, deviationIndex));
         int legArrivalTime = deviationIndex != 0 ? previousPath.get(deviationIndex - 1).getArrivalTime() : departureHour * 3600 + departureMinute * 60;
 
         forbiddenFootPathsPerLeg.clear();
         forbiddenConnectionsPerLeg.clear();
-        previousPath.forEach(e -> forbiddenFootPathsPerLeg.add(new HashSet<>()));
-        previousPath.forEach(e -> forbiddenConnectionsPerLeg.add(new HashSet<>()));
-
-        for (Journey yieldedPath : yieldedPaths) {
-
-            int jMax = previousPath.size() < yieldedPath.getLegs().size() ? previousPath.size() : yieldedPath.getLegs().size() - 1;
-            int j = 0;
-
-            while (j < jMax &&
-                    (previousPath.get(j).getDeparture() == yieldedPath.getLegs().get(j).getDeparture() &&
-                            previousPath.get(j).getArrival() == yieldedPath.getLegs().get(j).getArrival() &&
-                            previousPath.get(j).getTrip() == yieldedPath.getLegs().get(j).getTrip()
-                    )) {
-                j++;
-            }
+        previousPath.forEach(e -> forbiddenFootPathsPerLeg.add(new IntList()));
+        previousPath.forEach(e -> forbiddenConnectionsPerLeg.add(new IntList()));
 
-            if (deviationIndex <= j && j < yieldedPath.getLegs().size()) {
-                // j is the first index at which the paths differ
-                if (yieldedPath.getLegs().get(j).isFootpath()) {
-                    forbiddenFootPathsPerLeg.get(j).add(new Pair<>(yieldedPath.getLegs().get(j).getDeparture(), yieldedPath.getLegs().get(j).getArrival()));
-                } else {
-                    forbiddenConnectionsPerLeg.get(j).add(yieldedPath.getLegs().get(j));
-                }
+        // We remove the first different edge of paths that share the same prefix
+        yieldedTrie.forEachDeviation(previousPath, deviationIndex, previousPath.size() - 1, (index, departure, arrival, trip, footpath) -> {
+            if (footpath) {
+                addFootPath(forbiddenFootPathsPerLeg.get(index), departure, arrival);
+            } else {
+                removeEdges(forbiddenConnectionsPerLeg.get(index), departure, arrival, trip);
             }
-        }
+        });
 
         for (int i = deviationIndex; i < journey.getLegs().size() - 1; i++) {
             if (journey.getLegs().get(i).isFootpath()) {
-                forbiddenFootPathsPerLeg.get(i).add(new Pair<>(previousPath.get(i).getDeparture(), previousPath.get(i).getArrival()));
+                addFootPath(forbiddenFootPathsPerLeg.get(i), previousPath.get(i).getDeparture(), previousPath.get(i).getArrival());
             } else {
-                forbiddenConnectionsPerLeg.get(i).add(previousPath.get(i));
+                removeEdges(forbiddenConnectionsPerLeg.get(i), previousPath.get(i).getDeparture(), previousPath.get(i).getArrival(), previousPath.get(i).getTrip());
             }
         }
 
@@ -213,23 +399,28 @@ public class PostPonedYen {
             Pair<Integer, Leg> bestEarliestArrival;
 
             if (i == 0 || !previousPath.get(i - 1).isFootpath()) {
-                for (FootPath footPath : network.getFootPaths().get(spurNode)) {
-                    Pair<Integer, Integer> pair = new Pair<>(footPath.getFrom().getPosition(), footPath.getTo().getPosition());
-                    if (footPath.getTo().getPosition() != spurNode &&
-                            !forbiddenFootPathsPerLeg.get(i).contains(pair)) {
+                forbiddenFootPaths.clear();
+                forbiddenFootPaths.addAll(forbiddenFootPathsPerLeg.get(i));
+
+                for (int k = footPaths.getOffsets()[spurNode]; k < footPaths.getOffsets()[spurNode + 1]; k++) {
+                    int footPathTarget = footPaths.getTargets()[k];
+                    int footPathDuration = footPaths.getDurations()[k];
+
+                    if (footPathTarget != spurNode &&
+                            !forbiddenFootPaths.contains(k)) {
 
                         ParetoCriteria earliestAfterTime;
-                        if (footPath.getTo().getPosition() == this.end.getPosition()) {
-                            Leg leg = new Leg(footPath.getFrom().getPosition(),
+                        if (footPathTarget == this.end.getPosition()) {
+                            Leg leg = new Leg(spurNode,
                                     legArrivalTime,
-                                    footPath.getTo().getPosition(),
-                                    legArrivalTime + footPath.getDuration(),
+                                    footPathTarget,
+                                    legArrivalTime + footPathDuration,
                                     -1,
                                     true);
                             earliestAfterTime = new ParetoCriteria(legArrivalTime, leg.getArrivalTime(), 0, 0, leg);
                         } else {
-                            earliestAfterTime = pcsaKssp.earliestAfterTimeNotWalkPath(footPath.getTo().getPosition(),
-                                    legArrivalTime + footPath.getDuration() + Tools.TRANSFER_WINDOW);
+                            earliestAfterTime = pcsaKssp.earliestAfterTimeNotWalkPath(footPathTarget,
+                                    legArrivalTime + footPathDuration + Tools.TRANSFER_WINDOW);
                         }
 
                         if (earliestAfterTime.getLeg() != null &&
@@ -237,8 +428,8 @@ public class PostPonedYen {
                             earliestArrivalWalk.setLeft(earliestAfterTime.getArrivalTime());
                             earliestArrivalWalk.getRight().update(spurNode,
                                     legArrivalTime,
-                                    footPath.getTo().getPosition(),
-                                    legArrivalTime + footPath.getDuration(),
+                                    footPathTarget,
+                                    legArrivalTime + footPathDuration,
                                     -1,
                                     true);
                         }
@@ -247,55 +438,60 @@ public class PostPonedYen {
             }
 
 
-            for (int index : this.network.getConnectionIndicesFromStop().get(spurNode)) {
+            forbiddenEdges.clear();
+            forbiddenEdges.addAll(forbiddenConnectionsPerLeg.get(i));
 
-                Connection connection = this.network.getConnections().get(index);
-                Leg connectionToLeg = new Leg(connection.getDeparturePosition(),
-                        connection.getDepartureSeconds(),
-                        connection.getArrivalPosition(),
-                        connection.getArrivalSeconds(),
-                        connection.getTripIndex(),
-                        false);
+            for (int k = connections.getStopOffsets()[spurNode]; k < connections.getStopOffsets()[spurNode + 1]; k++) {
 
-                if (forbiddenConnectionsPerLeg.get(i).contains(connectionToLeg)) {
+                int index = connections.getStopConnections()[k];
+                int tripIndex = connections.getTripIndices()[index];
+                int connectionDeparture = connections.getDepartureSeconds()[index];
+                int connectionArrival = connections.getArrivalSeconds()[index];
+                int connectionArrivalPosition = connections.getArrivalPositions()[index];
+
+                if ((this.network.getTripServiceDays()[tripIndex] & serviceDayMask) == 0) {
+                    continue;
+                }
+
+                if (forbiddenEdges.contains(index)) {
                     continue;
                 }
 
-                if (connection.getDepartureSeconds() > earliestArrivalConnection.getLeft()) {
+                if (connectionDeparture > earliestArrivalConnection.getLeft()) {
                     break;
                 }
 
                 int currentPenalty = 0;
-                if (deviationIndex != 0 && previousPath.get(i - 1).getTrip() != connection.getTripIndex()) {
+                if (deviationIndex != 0 && previousPath.get(i - 1).getTrip() != tripIndex) {
                     currentPenalty = Tools.TRANSFER_WINDOW;
                 }
 
-                if (connection.getDepartureSeconds() >= legArrivalTime + currentPenalty &&
-                        connection.getArrivalPosition() != spurNode) {
+                if (connectionDeparture >= legArrivalTime + currentPenalty &&
+                        connectionArrivalPosition != spurNode) {
 
                     ParetoCriteria earliestAfterTime;
-                    if (connection.getArrivalPosition() == this.end.getPosition()) {
-                        Leg leg = new Leg(connection.getDeparturePosition(),
-                                connection.getDepartureSeconds(),
-                                connection.getArrivalPosition(),
-                                connection.getArrivalSeconds(),
-                                connection.getTripIndex(),
+                    if (connectionArrivalPosition == this.end.getPosition()) {
+                        Leg leg = new Leg(spurNode,
+                                connectionDeparture,
+                                connectionArrivalPosition,
+                                connectionArrival,
+                                tripIndex,
                                 false);
-                        earliestAfterTime = new ParetoCriteria(legArrivalTime, connection.getArrivalSeconds(), 0, 0, leg);
+                        earliestAfterTime = new ParetoCriteria(legArrivalTime, connectionArrival, 0, 0, leg);
                     } else {
-                        earliestAfterTime = pcsaKssp.earliestAfterTimeWithTrip(connection.getArrivalPosition(),
-                                connection.getArrivalSeconds(),
-                                connection.getTripIndex(),
+                        earliestAfterTime = pcsaKssp.earliestAfterTimeWithTrip(connectionArrivalPosition,
+                                connectionArrival,
+                                tripIndex,
                                 Tools.TRANSFER_WINDOW);
                     }
 
                     if (earliestArrivalConnection.getLeft() > earliestAfterTime.getArrivalTime()) {
                         earliestArrivalConnection.setLeft(earliestAfterTime.getArrivalTime());
-                        earliestArrivalConnection.getRight().update(connection.getDeparturePosition(),
-                                connection.getDepartureSeconds(),
-                                connection.getArrivalPosition(),
-                                connection.getArrivalSeconds(),
-                                connection.getTripIndex(),
+                        earliestArrivalConnection.getRight().update(spurNode,
+                                connectionDeparture,
+                                connectionArrivalPosition,
+                                connectionArrival,
+                                tripIndex,
                                 false);
                     }
                 }
@@ -345,42 +541,98 @@ public class PostPonedYen {
         }
     }
 
+    // Adds the repair of the journey to the heap, the one computed in advance if there is one
     private void repair(Journey journey) {
-        repair(journey, Collections.emptyList());
-    }
 
-    private void repair(Journey journey, List<Pair<Integer, Integer>> forbiddenPairs) {
+        Repair speculativeRepair = speculativeRepairs.remove(journey);
+        Repair repair = speculativeRepair != null ? speculativeRepair.task.join() : computeRepair(journey, newRepair(journey), lowerBoundsToEnd(), repairWorkspace);
 
-        List<Leg> previousPath = journey.getLegs();
-        int previousPathSize = journey.getLegs().size();
-        int deviationIndex = journey.getDeviationIndex();
+        // The connections of a speculative repair are spent by the query only now, as they would be in a sequential run
+        if (speculativeRepair != null && budget != null) {
+            budget.charge(repair.budget);
+        }
 
-        forbiddenEdges.clear();
-        forbiddenFootPaths.clear();
+        counterUsedTrees += repair.usedTrees;
+
+        // The deviation of a stopped scan may not be the best one
+        if (repair.journey != null && !exhausted()) {
+            heapSortedPaths.add(repair.journey);
+        }
+    }
 
-        forbiddenFootPaths.addAll(forbiddenPairs);
 
-        for (Journey yieldedPath : yieldedPaths) {
-            int jMax = previousPathSize < yieldedPath.getLegs().size() ? previousPathSize : yieldedPath.getLegs().size() - 1;
-            int j = 0;
+    // Starts on the pool the repairs of the first non-simple journeys of the heap, their forbidden elements being read here.
+    // The repairs kept from before the last yields and already done leave their place to new ones
+    private void speculateRepairs() {
 
-            while (j < jMax &&
-                    (previousPath.get(j).getDeparture() == yieldedPath.getLegs().get(j).getDeparture() &&
-                            previousPath.get(j).getArrival() == yieldedPath.getLegs().get(j).getArrival() &&
-                            previousPath.get(j).getTrip() == yieldedPath.getLegs().get(j).getTrip())) {
-                j++;
+        int running = 0;
+        for (Repair repair : speculativeRepairs.values()) {
+            if (!repair.task.isDone()) {
+                running++;
             }
+        }
 
-            if (j == deviationIndex && j < yieldedPath.getLegs().size()) {
-                // j is the first index at which the paths differ
-                if (yieldedPath.getLegs().get(deviationIndex).isFootpath()) {
-                    forbiddenFootPaths.add(new Pair<>(yieldedPath.getLegs().get(deviationIndex).getDeparture(), yieldedPath.getLegs().get(deviationIndex).getArrival()));
-                } else {
-                    removeEdges(yieldedPath.getLegs().get(j).getDeparture(), yieldedPath.getLegs().get(j).getArrival(), yieldedPath.getLegs().get(j).getTrip());
+        int width = pool.getParallelism() - running;
+        if (width <= 0) {
+            return;
+        }
+
+        PriorityQueue<Journey> candidates = new PriorityQueue<>(Comparator.comparingInt((Journey e) -> e.getArrivalTime()).reversed());
+        for (Journey candidate : heapSortedPaths) {
+            if (!speculativeRepairs.containsKey(candidate) && !isSimple(candidate)) {
+                candidates.add(candidate);
+                if (candidates.size() > width) {
+                    candidates.poll();
                 }
             }
         }
 
+        // Computed here once for the repairs, which only read it
+        int[] lowerBounds = lowerBoundsToEnd();
+
+        for (Journey candidate : candidates) {
+            Repair repair = newRepair(candidate);
+            repair.budget = budget != null ? budget.newTask() : QueryBudget.unlimited();
+            repair.task = pool.submit(() -> computeRepair(candidate, repair, lowerBounds, RepairWorkspace.acquire(network)));
+            speculativeRepairs.put(candidate, repair);
+        }
+    }
+
+
+    // Repair forbidding the first different edge at the deviation index of the yielded paths sharing the prefix of the journey
+    private Repair newRepair(Journey journey) {
+
+        Repair repair = new Repair();
+        int deviationIndex = journey.getDeviationIndex();
+
+        yieldedTrie.forEachDeviation(journey.getLegs(), deviationIndex, deviationIndex, (index, departure, arrival, trip, footpath) -> {
+            if (footpath) {
+                addFootPath(repair.forbiddenFootPaths, departure, arrival);
+            } else {
+                removeEdges(repair.forbiddenConnections, departure, arrival, trip);
+            }
+        });
+
+        return repair;
+    }
+
+
+    // Deviation of the journey from its deviation index avoiding the forbidden elements of the repair, it only reads the journey,
+    // the repair and the lower bounds and writes in the workspace so that it can run on any thread
+    private Repair computeRepair(Journey journey, Repair repair, int[] lowerBounds, RepairWorkspace workspace) {
+
+        IndexSet forbiddenEdges = workspace.forbiddenEdges;
+        IndexSet forbiddenFootPaths = workspace.forbiddenFootPaths;
+        boolean[] forbiddenVertices = workspace.forbiddenVertices;
+
+        List<Leg> previousPath = journey.getLegs();
+        int deviationIndex = journey.getDeviationIndex();
+
+        forbiddenEdges.clear();
+        forbiddenEdges.addAll(repair.forbiddenConnections);
+        forbiddenFootPaths.clear();
+        forbiddenFootPaths.addAll(repair.forbiddenFootPaths);
+
         for (int i = 0; i < network.getStopPoints().size(); i++) {
             forbiddenVertices[i] = false;
         }
@@ -389,8 +641,6 @@ public class PostPonedYen {
             forbiddenVertices[previousPath.get(i - 1).getDeparture()] = true;
         }
 
-        Collections.sort(forbiddenEdges);
-
         boolean previousWalk = deviationIndex != 0 && previousPath.get(deviationIndex - 1).isFootpath();
         int previousArrivalTime = deviationIndex != 0 ? previousPath.get(deviationIndex - 1).getArrivalTime() : departureHour * 3600 + departureMinute * 60;
 
@@ -399,23 +649,45 @@ public class PostPonedYen {
         }
 
         int spurNode = previousPath.get(deviationIndex).getDeparture();
+        CsaAlgorithmForKssp csaKssp = new CsaAlgorithmForKssp(network, this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime, serviceDay);
+        csaKssp.setBudget(repair.budget != null ? repair.budget : budget);
+        csaKssp.setLowerBounds(lowerBounds, this.end);
 
         if (previousPath.get(deviationIndex).isFootpath()) {
-            csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
             csaKssp.launch(forbiddenVertices, forbiddenEdges, forbiddenFootPaths);
         } else if (previousWalk) {
-            csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
-            network.getFootPaths().get(spurNode).forEach(e -> forbiddenFootPaths.add(new Pair<>(e.getFrom().getPosition(), e.getTo().getPosition())));
+            for (int k = network.getFootPathTable().getOffsets()[spurNode]; k < network.getFootPathTable().getOffsets()[spurNode + 1]; k++) {
+                forbiddenFootPaths.add(k);
+            }
             csaKssp.launch(forbiddenVertices, forbiddenEdges, forbiddenFootPaths, true);
         } else {
-            csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
             csaKssp.launch(forbiddenVertices, forbiddenEdges, forbiddenFootPaths);
         }
-        counterUsedTrees++;
+        repair.usedTrees++;
 
         Optional<Journey> newJourney = csaKssp.extractResult();
 
-        if (newJourney.isPresent() && correctJourney(newJourney.get())) {
+        // If the journey is not extracted properly, we forbid the first foot path and try to compute a deviation one more time,
+        // only the labels scanned after this foot path being repaired
+        while (newJourney.isPresent() && !correctJourney(newJourney.get())) {
+
+            if (newJourney.get().getLegs().size() <= 1 ||
+                    !newJourney.get().getLegs().get(0).isFootpath() ||
+                    !newJourney.get().getLegs().get(1).isFootpath()) {
+                return repair;
+            }
+
+            IntList addedFootPaths = new IntList(1);
+            addFootPath(addedFootPaths, newJourney.get().getLegs().get(1).getDeparture(), newJourney.get().getLegs().get(1).getArrival());
+            forbiddenFootPaths.addAll(addedFootPaths);
+
+            csaKssp.relaunch(NO_INDICES, NO_INDICES, NO_INDICES, addedFootPaths);
+            repair.usedTrees++;
+
+            newJourney = csaKssp.extractResult();
+        }
+
+        if (newJourney.isPresent()) {
 
             // We shift the departure time of the walk paths so that it is the earliest possible
             if (newJourney.get().getLegs().get(0).isFootpath()) {
@@ -436,31 +708,45 @@ public class PostPonedYen {
             newJourney.get().setDeviationIndex(deviationIndex);
             newJourney.get().getLegs().addAll(0, journey.getLegs().subList(0, deviationIndex));
 
-            heapSortedPaths.add(newJourney.get());
-        } else if (newJourney.isPresent() && !correctJourney(newJourney.get())) {
-
-            // If the journey is not extracted properly, we forbid the first foot path and try to compute a deviation one more time
-            if (newJourney.get().getLegs().size() > 1 &&
-                    newJourney.get().getLegs().get(0).isFootpath() &&
-                    newJourney.get().getLegs().get(1).isFootpath()) {
-                List<Pair<Integer, Integer>> list = new ArrayList<>();
-                list.addAll(forbiddenPairs);
-                list.add(new Pair<>(newJourney.get().getLegs().get(1).getDeparture(), newJourney.get().getLegs().get(1).getArrival()));
-                repair(journey, list);
-            }
+            repair.journey = newJourney.get();
         }
+
+        return repair;
     }
 
 
-    private void removeEdges(int departure, int arrival, int tripIndex) {
-        List<Integer> edges = network.getConnectionIndicesFromPair().getOrDefault(new Pair<>(departure, arrival), Collections.emptyList());
+    // Lower bounds of the travel times to the target given by the landmarks of the network, null if there are none
+    private int[] lowerBoundsToEnd() {
+        Landmarks landmarks = network.getLandmarks();
 
-        for (Integer edge : edges) {
-            Connection connection = network.getConnections().get(edge);
+        if (lowerBounds == null && landmarks != null && landmarks.size() > 0) {
+            lowerBounds = new int[network.getStopPoints().size()];
+            landmarks.lowerBoundsTo(end.getPosition(), lowerBounds);
+        }
 
-            if (connection.getTripIndex() == tripIndex && !forbiddenEdges.contains(edge)) {
-                forbiddenEdges.add(edge);
-            }
+        return lowerBounds;
+    }
+
+
+    private void addFootPath(IntList forbiddenFootPath, int departure, int arrival) {
+        int index = network.getFootPathTable().indexOf(departure, arrival);
+
+        if (index != -1) {
+            forbiddenFootPath.add(index);
+        }
+    }
+
+
+    private void removeEdges(IntList forbiddenEdge, int departure, int arrival, int tripIndex) {
+        ConnectionPairIndex index = network.getConnectionPairIndex();
+        int row = index.tripPairRow(departure, arrival, tripIndex);
+
+        if (row == -1) {
+            return;
+        }
+
+        for (int k = index.getTripPairOffsets()[row]; k < index.getTripPairOffsets()[row + 1]; k++) {
+            forbiddenEdge.add(index.getTripPairConnections()[k]);
         }
     }
 
@@ -481,4 +767,47 @@ public class PostPonedYen {
     public int getCounterUsedTrees() {
         return counterUsedTrees;
     }
+
+
+    // Forbidden elements of a repair, then the deviation found, null if there is none, and the number of CSA launched to find it.
+    // A speculative repair has its own budget to be cancelled and the task computing it
+    private static class Repair {
+
+        private IntList forbiddenConnections = new IntList();
+        private IntList forbiddenFootPaths = new IntList();
+        private Journey journey;
+        private int usedTrees;
+        private QueryBudget budget;
+        private ForkJoinTask<Repair> task;
+    }
+
+
+    // Forbidden elements of the repairs of a thread
+    private static class RepairWorkspace {
+
+        private static final ThreadLocal<RepairWorkspace> WORKSPACES = new ThreadLocal<>();
+
+        private PublicTransitNetwork network;
+        private IndexSet forbiddenEdges;
+        private IndexSet forbiddenFootPaths;
+        private boolean[] forbiddenVertices;
+
+        private RepairWorkspace(PublicTransitNetwork network) {
+            this.network = network;
+            this.forbiddenEdges = new IndexSet(network.getConnectionTable().size());
+            this.forbiddenFootPaths = new IndexSet(network.getFootPathTable().size());
+            this.forbiddenVertices = new boolean[network.getStopPoints().size()];
+        }
+
+        private static RepairWorkspace acquire(PublicTransitNetwork network) {
+            RepairWorkspace workspace = WORKSPACES.get();
+
+            if (workspace == null || workspace.network != network) {
+                workspace = new RepairWorkspace(network);
+                WORKSPACES.set(workspace);
+            }
+
+            return workspace;
+        }
+    }
 }
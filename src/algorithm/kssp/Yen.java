@@ -1,20 +1,37 @@
 package algorithm.kssp;
 
 import algorithm.KsspResultAndMetrics;
+import algorithm.QueryBudget;
+import algorithm.Tools;
+import algorithm.csa.BatchedCsaForKssp;
 import algorithm.csa.CsaAlgorithmForKssp;
 import com.google.common.base.Stopwatch;
-import network.Connection;
+import network.ConnectionPairIndex;
+import network.FootPathTable;
+import network.Landmarks;
 import network.PublicTransitNetwork;
 import network.StopPoint;
-import tools.Pair;
+import tools.IndexSet;
+import tools.IntList;
+import tools.LongMinHeap;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 public class Yen {
 
+    public static final int BATCH_LANES = 16;
+    private static final IntList NO_INDICES = new IntList(1);
+
     private PublicTransitNetwork network;
     private CsaAlgorithmForKssp csaKssp;
+    private BatchedCsaForKssp batchedCsa;
+    private ForkJoinPool pool;
+    private QueryBudget budget;
+    private int serviceDay;
     private StopPoint start;
     private StopPoint end;
     private int departureHour;
@@ -22,23 +39,83 @@ public class Yen {
     private int counterUsedTrees = 0;
     private PriorityQueue<Journey> heapSortedPaths = new PriorityQueue<>(Comparator.comparingInt(Journey::getArrivalTime));
     private List<Journey> yieldedPaths = new ArrayList<>();
-    private List<List<Integer>> forbiddenEdges = new ArrayList<>();
-    private List<Set<Pair<Integer, Integer>>> forbiddenFootPaths = new ArrayList<>();
+    private JourneyTrie yieldedTrie = new JourneyTrie();
+    private List<IntList> forbiddenEdges = new ArrayList<>();
+    private IndexSet forbiddenEdgeSet;
+    private List<IntList> forbiddenFootPaths = new ArrayList<>();
+    private IndexSet forbiddenFootPathSet;
     private boolean[] forbiddenVertices;
+    private int maxResults = Integer.MAX_VALUE;
+    private int neededCandidates;
+    private LongMinHeap bestArrivals = new LongMinHeap(16);
+    private int[] lowerBounds;
+
+    public Yen(PublicTransitNetwork network,
+               StopPoint start,
+               StopPoint end,
+               int departureHour,
+               int departureMinute) {
+
+        this(network, start, end, 0, departureHour, departureMinute);
+    }
 
+
+    // Query on a given day of the service days of the network
     public Yen(PublicTransitNetwork network,
                StopPoint start,
                StopPoint end,
+               LocalDate date,
                int departureHour,
                int departureMinute) {
 
+        this(network, start, end, network.getServiceDay(date), departureHour, departureMinute);
+    }
+
+
+    private Yen(PublicTransitNetwork network,
+                StopPoint start,
+                StopPoint end,
+                int serviceDay,
+                int departureHour,
+                int departureMinute) {
+
         this.network = network;
-        this.csaKssp = new CsaAlgorithmForKssp(network, start, end, departureHour * 3600 + departureMinute * 60);
+        this.csaKssp = new CsaAlgorithmForKssp(network, start, end, departureHour * 3600 + departureMinute * 60, serviceDay);
+        this.serviceDay = serviceDay;
         this.start = start;
         this.end = end;
         this.departureHour = departureHour;
         this.departureMinute = departureMinute;
         this.forbiddenVertices = new boolean[network.getStopPoints().size()];
+        this.forbiddenEdgeSet = new IndexSet(network.getConnectionTable().size());
+        this.forbiddenFootPathSet = new IndexSet(network.getFootPathTable().size());
+    }
+
+
+    // The spur nodes of a journey are then launched together in a batched scan instead of one scan each
+    public void setBatchedDeviations(boolean batched) {
+        this.batchedCsa = batched ? new BatchedCsaForKssp(network, BATCH_LANES, serviceDay) : null;
+
+        if (this.batchedCsa != null) {
+            this.batchedCsa.setBudget(budget);
+        }
+    }
+
+
+    // The spur nodes of a journey are then launched concurrently on the pool, the batched deviations being preferred if both are set
+    public void setParallelDeviations(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    // The scans of the query stop when the budget is exhausted, no journey being yielded afterwards
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
+        this.csaKssp.setBudget(budget);
+
+        if (this.batchedCsa != null) {
+            this.batchedCsa.setBudget(budget);
+        }
     }
 
 
@@ -47,6 +124,10 @@ public class Yen {
             csaKssp.launch();
             counterUsedTrees++;
 
+            if (exhausted()) {
+                return false;
+            }
+
             Optional<Journey> journey = csaKssp.extractResult();
             if (journey.isPresent()) {
                 journey.get().setDeviationIndex(0);
@@ -61,7 +142,7 @@ public class Yen {
 
     public Optional<Journey> nextPath() {
 
-        if (heapSortedPaths.isEmpty()) {
+        if (heapSortedPaths.isEmpty() || exhausted()) {
             return Optional.empty();
         }
 
@@ -70,6 +151,7 @@ public class Yen {
         computeDeviations(journey);
 
         yieldedPaths.add(journey);
+        yieldedTrie.add(journey);
         return Optional.of(journey);
     }
 
@@ -77,6 +159,7 @@ public class Yen {
     public List<Journey> returnResults(int k) {
 
         List<Journey> result = new ArrayList<>();
+        maxResults = k;
 
         if (initialize()) {
             int counter = 0;
@@ -96,11 +179,74 @@ public class Yen {
     }
 
 
+    // The best journeys found before the budget is exhausted, at most k
+    public List<Journey> returnResults(int k, QueryBudget budget) {
+
+        List<Journey> result = new ArrayList<>();
+        iterator(k, budget).forEachRemaining(result::add);
+
+        return result;
+    }
+
+
+    // Iterates over the k first journeys, each one being handed over as soon as it is the best candidate : its deviations
+    // are only computed when the next journey is asked for. The iteration ends early when the budget is exhausted,
+    // the journeys already handed over being final
+    public Iterator<Journey> iterator(int k, QueryBudget budget) {
+
+        maxResults = k;
+        setBudget(budget);
+
+        return new Iterator<Journey>() {
+
+            private boolean initialized;
+            private Journey pending;
+            private int counter;
+
+            @Override
+            public boolean hasNext() {
+                if (counter >= k) {
+                    return false;
+                }
+
+                if (!initialized) {
+                    initialized = true;
+
+                    if (!initialize()) {
+                        return false;
+                    }
+                }
+
+                if (pending != null) {
+                    computeDeviations(pending);
+                    yieldedPaths.add(pending);
+                    yieldedTrie.add(pending);
+                    pending = null;
+                }
+
+                return !heapSortedPaths.isEmpty() && !exhausted();
+            }
+
+            @Override
+            public Journey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                pending = heapSortedPaths.poll();
+                counter++;
+                return pending;
+            }
+        };
+    }
+
+
     public List<KsspResultAndMetrics> returnResultsForBenchmark(int k, List<Integer> values) {
 
         List<KsspResultAndMetrics> result = new ArrayList<>();
 
         Stopwatch stopwatch = Stopwatch.createStarted();
+        maxResults = k;
         int counter = 0;
         if (initialize()) {
             while (counter < k) {
@@ -140,41 +286,32 @@ public class Yen {
         int previousPathSize = journey.getLegs().size();
         int deviationIndex = journey.getDeviationIndex();
 
+        // The journey is the last result asked for, its deviations would never be yielded
+        if (!boundCandidates(maxResults - yieldedPaths.size() - 1)) {
+            return;
+        }
+
         forbiddenEdges.clear();
         forbiddenFootPaths.clear();
-        previousPath.forEach(e -> forbiddenEdges.add(new ArrayList<>()));
-        previousPath.forEach(e -> forbiddenFootPaths.add(new HashSet<>()));
+        previousPath.forEach(e -> forbiddenEdges.add(new IntList()));
+        previousPath.forEach(e -> forbiddenFootPaths.add(new IntList()));
 
         for (int i = deviationIndex; i < previousPathSize; i++) {
             if (previousPath.get(i).isFootpath()) {
-                forbiddenFootPaths.get(i).add(new Pair<>(previousPath.get(i).getDeparture(), previousPath.get(i).getArrival()));
+                addFootPath(forbiddenFootPaths.get(i), previousPath.get(i).getDeparture(), previousPath.get(i).getArrival());
             } else {
                 removeEdges(forbiddenEdges.get(i), previousPath.get(i).getDeparture(), previousPath.get(i).getArrival(), previousPath.get(i).getTrip());
             }
         }
 
         // We remove the first different edge of paths that share the same prefix
-        for (Journey yieldedPath : yieldedPaths) {
-
-            int jMax = previousPathSize < yieldedPath.getLegs().size() ? previousPathSize : yieldedPath.getLegs().size() - 1;
-            int j = 0;
-
-            while (j < jMax &&
-                    (previousPath.get(j).getDeparture() == yieldedPath.getLegs().get(j).getDeparture() &&
-                            previousPath.get(j).getArrival() == yieldedPath.getLegs().get(j).getArrival() &&
-                            previousPath.get(j).getTrip() == yieldedPath.getLegs().get(j).getTrip())) {
-                j++;
-            }
-
-            if (deviationIndex <= j && j < yieldedPath.getLegs().size()) {
-                // j is the first index at which the paths differ
-                if (yieldedPath.getLegs().get(j).isFootpath()) {
-                    forbiddenFootPaths.get(j).add(new Pair<>(yieldedPath.getLegs().get(j).getDeparture(), yieldedPath.getLegs().get(j).getArrival()));
-                } else {
-                    removeEdges(forbiddenEdges.get(j), yieldedPath.getLegs().get(j).getDeparture(), yieldedPath.getLegs().get(j).getArrival(), yieldedPath.getLegs().get(j).getTrip());
-                }
+        yieldedTrie.forEachDeviation(previousPath, deviationIndex, previousPathSize - 1, (index, departure, arrival, trip, footpath) -> {
+            if (footpath) {
+                addFootPath(forbiddenFootPaths.get(index), departure, arrival);
+            } else {
+                removeEdges(forbiddenEdges.get(index), departure, arrival, trip);
             }
-        }
+        });
 
         for (int i = 0; i < network.getStopPoints().size(); i++) {
             forbiddenVertices[i] = false;
@@ -184,10 +321,25 @@ public class Yen {
             forbiddenVertices[previousPath.get(i - 1).getDeparture()] = true;
         }
 
-        forbiddenEdges.forEach(Collections::sort);
+        // A spur node reached by a walk and left by a trip can not be left by another walk
+        for (int i = deviationIndex; i < previousPathSize - 1; i++) {
+            if (!previousPath.get(i).isFootpath() && previousWalk(previousPath, i)) {
+                int spurNode = previousPath.get(i).getDeparture();
+                FootPathTable footPaths = network.getFootPathTable();
+                for (int k = footPaths.getOffsets()[spurNode]; k < footPaths.getOffsets()[spurNode + 1]; k++) {
+                    forbiddenFootPaths.get(i).add(k);
+                }
+            }
+        }
 
-        boolean previousWalk = deviationIndex != 0 && previousPath.get(deviationIndex - 1).isFootpath();
-        int previousArrivalTime = deviationIndex != 0 ? previousPath.get(deviationIndex - 1).getArrivalTime() : departureHour * 3600 + departureMinute * 60;
+        List<Optional<Journey>> launchedJourneys = null;
+        if (batchedCsa != null) {
+            launchedJourneys = launchBatchedDeviations(previousPath, deviationIndex);
+        } else if (pool != null) {
+            launchedJourneys = launchParallelDeviations(previousPath, deviationIndex);
+        }
+        IntList retryFootPaths = null;
+        boolean relaunchable = false;
 
         for (int i = deviationIndex; i < previousPathSize - 1; i++) {
 
@@ -196,34 +348,53 @@ public class Yen {
             }
 
             int spurNode = previousPath.get(i).getDeparture();
+            int previousArrivalTime = previousArrivalTime(previousPath, i);
 
-            if (previousPath.get(i).isFootpath()) {
-                csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
-                csaKssp.launch(forbiddenVertices, forbiddenEdges.get(i), forbiddenFootPaths.get(i));
+            forbiddenEdgeSet.clear();
+            forbiddenEdgeSet.addAll(forbiddenEdges.get(i));
+            forbiddenFootPathSet.clear();
+            forbiddenFootPathSet.addAll(forbiddenFootPaths.get(i));
 
-                previousWalk = true;
-            } else if (previousWalk) {
-                csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
-                int index = i;
-                network.getFootPaths().get(spurNode).forEach(e -> forbiddenFootPaths.get(index).add(new Pair<>(e.getFrom().getPosition(), e.getTo().getPosition())));
-                csaKssp.launch(forbiddenVertices, forbiddenEdges.get(i), forbiddenFootPaths.get(i), true);
+            Optional<Journey> newJourney;
+
+            // The spur node can not be left before a time from which the arrival bound can be reached
+            int[] toEnd = lowerBoundsToEnd();
+            if (launchedJourneys == null && retryFootPaths == null && toEnd != null &&
+                    toEnd[spurNode] > arrivalBound() - previousArrivalTime) {
+                continue;
+            }
 
-                previousWalk = false;
+            if (launchedJourneys != null && retryFootPaths == null) {
+                newJourney = launchedJourneys.get(i - deviationIndex);
+                relaunchable = false;
+            } else if (retryFootPaths != null && relaunchable) {
+                // Only the labels scanned after the newly forbidden foot path are repaired
+                csaKssp.relaunch(NO_INDICES, NO_INDICES, NO_INDICES, retryFootPaths);
+                newJourney = csaKssp.extractResult();
             } else {
                 csaKssp.updateStartAndEnd(this.network.getStopPoints().get(spurNode), this.end, previousArrivalTime);
-                csaKssp.launch(forbiddenVertices, forbiddenEdges.get(i), forbiddenFootPaths.get(i));
-
-                previousWalk = false;
+                csaKssp.setArrivalBound(arrivalBound());
+                csaKssp.launch(forbiddenVertices, forbiddenEdgeSet, forbiddenFootPathSet, !previousPath.get(i).isFootpath() && previousWalk(previousPath, i));
+                newJourney = csaKssp.extractResult();
+                relaunchable = true;
             }
-            previousArrivalTime = previousPath.get(i).getArrivalTime();
+            retryFootPaths = null;
             counterUsedTrees++;
 
-            Optional<Journey> newJourney = csaKssp.extractResult();
+            // The journey of a stopped scan may not be the best one, the candidates are not used anymore
+            if (exhausted()) {
+                return;
+            }
 
             if (newJourney.isPresent() &&
                     newJourney.get().getLegs().size() == 1 &&
                     newJourney.get().getLegs().get(0).isFootpath() &&
-                    forbiddenFootPaths.get(i).contains(new Pair<>(newJourney.get().getLegs().get(0).getDeparture(), newJourney.get().getLegs().get(0).getArrival()))) {
+                    forbiddenFootPathSet.contains(network.getFootPathTable().indexOf(newJourney.get().getLegs().get(0).getDeparture(), newJourney.get().getLegs().get(0).getArrival()))) {
+                continue;
+            }
+
+            // A deviation arriving after the bound would never be yielded, nor its repairs which arrive later
+            if (newJourney.isPresent() && newJourney.get().getArrivalTime() > arrivalBound()) {
                 continue;
             }
 
@@ -247,33 +418,245 @@ public class Yen {
 
                 newJourney.get().setDeviationIndex(i);
                 newJourney.get().getLegs().addAll(0, journey.getLegs().subList(0, i));
-                heapSortedPaths.add(newJourney.get());
+                addCandidate(newJourney.get());
             } else if (newJourney.isPresent() && !correctJourney(newJourney.get())) {
 
                 // If the journey is not extracted properly, we forbid the first foot path and try to compute a deviation one more time
                 if (newJourney.get().getLegs().size() > 1 &&
                         newJourney.get().getLegs().get(0).isFootpath() &&
                         newJourney.get().getLegs().get(1).isFootpath()) {
-                    forbiddenFootPaths.get(i).add(new Pair<>(newJourney.get().getLegs().get(1).getDeparture(), newJourney.get().getLegs().get(1).getArrival()));
-                    previousWalk = i != 0 && previousPath.get(i - 1).isFootpath();
-                    previousArrivalTime = i != 0 ? previousPath.get(i - 1).getArrivalTime() : departureHour * 3600 + departureMinute * 60;
+                    retryFootPaths = new IntList(1);
+                    addFootPath(retryFootPaths, newJourney.get().getLegs().get(1).getDeparture(), newJourney.get().getLegs().get(1).getArrival());
+                    for (int k = 0; k < retryFootPaths.size(); k++) {
+                        forbiddenFootPaths.get(i).add(retryFootPaths.get(k));
+                    }
                     i--;
                 }
             }
         }
+
+        // The candidates arriving after the bound are dropped, the ones tied with it being kept
+        if (heapSortedPaths.size() > neededCandidates) {
+            int bound = arrivalBound();
+            heapSortedPaths.removeIf(candidate -> candidate.getArrivalTime() > bound);
+        }
+    }
+
+
+    // The spur launches of a journey in one scan of the connections, by batches of at most BATCH_LANES spur nodes
+    private List<Optional<Journey>> launchBatchedDeviations(List<Leg> previousPath, int deviationIndex) {
+
+        List<Optional<Journey>> journeys = new ArrayList<>();
+        IntList vertices = new IntList();
+        List<IntList> laneVertices = new ArrayList<>();
+
+        for (int i = 1; i < deviationIndex; i++) {
+            vertices.add(previousPath.get(i - 1).getDeparture());
+        }
+
+        for (int i = deviationIndex; i < previousPath.size() - 1; i++) {
+
+            if (i > 0) {
+                vertices.add(previousPath.get(i - 1).getDeparture());
+            }
+
+            // Each lane keeps its own copy of the vertices forbidden before its spur node
+            IntList forbidden = new IntList(vertices.size());
+            for (int j = 0; j < vertices.size(); j++) {
+                forbidden.add(vertices.get(j));
+            }
+            laneVertices.add(forbidden);
+
+            batchedCsa.addQuery(this.network.getStopPoints().get(previousPath.get(i).getDeparture()),
+                    this.end,
+                    previousArrivalTime(previousPath, i),
+                    forbidden,
+                    forbiddenEdges.get(i),
+                    NO_INDICES,
+                    forbiddenFootPaths.get(i),
+                    !previousPath.get(i).isFootpath() && previousWalk(previousPath, i));
+
+            if (batchedCsa.isFull() || i == previousPath.size() - 2) {
+                batchedCsa.launch();
+                for (int lane = 0; lane < batchedCsa.size(); lane++) {
+                    journeys.add(batchedCsa.extractResult(lane));
+                }
+                batchedCsa.clear();
+            }
+        }
+
+        return journeys;
     }
 
 
-    private void removeEdges(List<Integer> forbiddenEdge, int departure, int arrival, int tripIndex) {
-        List<Integer> edges = network.getConnectionIndicesFromPair().getOrDefault(new Pair<>(departure, arrival), Collections.emptyList());
+    // The spur launches of a journey as tasks of the pool, joined in the order of the spur nodes so that the deviations
+    // are added to the heap as in a sequential run
+    private List<Optional<Journey>> launchParallelDeviations(List<Leg> previousPath, int deviationIndex) {
+
+        // The vertices forbidden for the spur node i are the departures of the i first legs
+        int[] prefixStops = new int[previousPath.size()];
+        for (int i = 0; i < previousPath.size(); i++) {
+            prefixStops[i] = previousPath.get(i).getDeparture();
+        }
+
+        List<ForkJoinTask<Optional<Journey>>> tasks = new ArrayList<>();
+        int arrivalBound = arrivalBound();
+        // Computed here once for the spur tasks, which only read it
+        int[] lowerBounds = lowerBoundsToEnd();
+
+        for (int i = deviationIndex; i < previousPath.size() - 1; i++) {
+            StopPoint spurNode = this.network.getStopPoints().get(previousPath.get(i).getDeparture());
+            int departureSeconds = previousArrivalTime(previousPath, i);
+            int prefixSize = i;
+            IntList edges = forbiddenEdges.get(i);
+            IntList footPaths = forbiddenFootPaths.get(i);
+            boolean noFootPaths = !previousPath.get(i).isFootpath() && previousWalk(previousPath, i);
 
-        for (Integer edge : edges) {
-            Connection connection = network.getConnections().get(edge);
+            tasks.add(pool.submit(() -> launchSpur(spurNode, departureSeconds, arrivalBound, lowerBounds, prefixStops, prefixSize, edges, footPaths, noFootPaths)));
+        }
+
+        List<Optional<Journey>> journeys = new ArrayList<>();
+        for (ForkJoinTask<Optional<Journey>> task : tasks) {
+            journeys.add(task.join());
+        }
+
+        return journeys;
+    }
 
-            if (connection.getTripIndex() == tripIndex && !forbiddenEdge.contains(edge)) {
-                forbiddenEdge.add(edge);
+
+    // Runs on a thread of the pool with the workspace of this thread, the arguments are only read
+    private Optional<Journey> launchSpur(StopPoint spurNode,
+                                         int departureSeconds,
+                                         int arrivalBound,
+                                         int[] lowerBounds,
+                                         int[] prefixStops,
+                                         int prefixSize,
+                                         IntList edges,
+                                         IntList footPaths,
+                                         boolean noFootPaths) {
+
+        SpurWorkspace workspace = SpurWorkspace.acquire(network);
+        workspace.connections.clear();
+        workspace.connections.addAll(edges);
+        workspace.footPaths.clear();
+        workspace.footPaths.addAll(footPaths);
+
+        try {
+            for (int k = 0; k < prefixSize; k++) {
+                workspace.vertices[prefixStops[k]] = true;
+            }
+
+            CsaAlgorithmForKssp spurCsa = new CsaAlgorithmForKssp(network, spurNode, this.end, departureSeconds, serviceDay);
+            spurCsa.setArrivalBound(arrivalBound);
+            spurCsa.setLowerBounds(lowerBounds, this.end);
+            spurCsa.setBudget(budget);
+            spurCsa.launch(workspace.vertices, workspace.connections, workspace.footPaths, noFootPaths);
+            return spurCsa.extractResult();
+        } finally {
+            for (int k = 0; k < prefixSize; k++) {
+                workspace.vertices[prefixStops[k]] = false;
+            }
+        }
+    }
+
+
+    // Keeps the arrival times of the needed best candidates of the heap, false if no candidate is needed
+    private boolean boundCandidates(int needed) {
+
+        neededCandidates = needed;
+        bestArrivals.clear();
+
+        if (needed <= 0) {
+            return false;
+        }
+
+        if (maxResults != Integer.MAX_VALUE) {
+            for (Journey candidate : heapSortedPaths) {
+                boundArrival(candidate.getArrivalTime());
             }
         }
+
+        return true;
+    }
+
+
+    private boolean exhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+
+    private void boundArrival(int arrivalTime) {
+        if (bestArrivals.size() < neededCandidates) {
+            bestArrivals.add(-arrivalTime);
+        } else if (arrivalTime < -bestArrivals.peek()) {
+            bestArrivals.poll();
+            bestArrivals.add(-arrivalTime);
+        }
+    }
+
+
+    // Latest arrival time of a candidate that may still be yielded, the heap holding enough candidates arriving at or before it
+    private int arrivalBound() {
+        if (maxResults == Integer.MAX_VALUE || bestArrivals.size() < neededCandidates) {
+            return Tools.MAX_ARRIVAL_TIME;
+        }
+
+        return (int) -bestArrivals.peek();
+    }
+
+
+    private void addCandidate(Journey journey) {
+        heapSortedPaths.add(journey);
+
+        if (maxResults != Integer.MAX_VALUE) {
+            boundArrival(journey.getArrivalTime());
+        }
+    }
+
+
+    // Lower bounds of the travel times to the target given by the landmarks of the network, null if there are none
+    private int[] lowerBoundsToEnd() {
+        Landmarks landmarks = network.getLandmarks();
+
+        if (lowerBounds == null && landmarks != null && landmarks.size() > 0) {
+            lowerBounds = new int[network.getStopPoints().size()];
+            landmarks.lowerBoundsTo(end.getPosition(), lowerBounds);
+        }
+
+        return lowerBounds;
+    }
+
+
+    private boolean previousWalk(List<Leg> previousPath, int i) {
+        return i != 0 && previousPath.get(i - 1).isFootpath();
+    }
+
+
+    private int previousArrivalTime(List<Leg> previousPath, int i) {
+        return i != 0 ? previousPath.get(i - 1).getArrivalTime() : departureHour * 3600 + departureMinute * 60;
+    }
+
+
+    private void addFootPath(IntList forbiddenFootPath, int departure, int arrival) {
+        int index = network.getFootPathTable().indexOf(departure, arrival);
+
+        if (index != -1) {
+            forbiddenFootPath.add(index);
+        }
+    }
+
+
+    private void removeEdges(IntList forbiddenEdge, int departure, int arrival, int tripIndex) {
+        ConnectionPairIndex index = network.getConnectionPairIndex();
+        int row = index.tripPairRow(departure, arrival, tripIndex);
+
+        if (row == -1) {
+            return;
+        }
+
+        for (int k = index.getTripPairOffsets()[row]; k < index.getTripPairOffsets()[row + 1]; k++) {
+            forbiddenEdge.add(index.getTripPairConnections()[k]);
+        }
     }
 
 
@@ -301,4 +684,34 @@ public class Yen {
     public List<Journey> getYieldedPaths() {
         return yieldedPaths;
     }
+
+
+    // Forbidden elements of the spur launches of a thread of the pool
+    private static class SpurWorkspace {
+
+        private static final ThreadLocal<SpurWorkspace> WORKSPACES = new ThreadLocal<>();
+
+        private PublicTransitNetwork network;
+        private boolean[] vertices;
+        private IndexSet connections;
+        private IndexSet footPaths;
+
+        private SpurWorkspace(PublicTransitNetwork network) {
+            this.network = network;
+            this.vertices = new boolean[network.getStopPoints().size()];
+            this.connections = new IndexSet(network.getConnectionTable().size());
+            this.footPaths = new IndexSet(network.getFootPathTable().size());
+        }
+
+        private static SpurWorkspace acquire(PublicTransitNetwork network) {
+            SpurWorkspace workspace = WORKSPACES.get();
+
+            if (workspace == null || workspace.network != network) {
+                workspace = new SpurWorkspace(network);
+                WORKSPACES.set(workspace);
+            }
+
+            return workspace;
+        }
+    }
 }
@@ -8,23 +8,24 @@ import gtfs.GtfsImport;
 import network.PublicTransitNetwork;
 import network.StopPoint;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class RoutingApplication {
 
     public static final LocalDate LOAD_DATE = LocalDate.of(2019, 10, 10);
+    public static final Path SNAPSHOT_DIRECTORY = Paths.get("snapshots");
 
     public static void main(String[] args) {
 
-        PublicTransitNetwork network = new PublicTransitNetwork();
-        GtfsImport gtfsImportParis = new GtfsImport(City.BERLIN);
+        GtfsImport gtfsImportParis = new GtfsImport(City.BERLIN, ForkJoinPool.commonPool());
 
-        gtfsImportParis.readFiles(LOAD_DATE, network);
-
-        network.updatingNetwork();
+        PublicTransitNetwork network = gtfsImportParis.loadNetwork(LOAD_DATE, SNAPSHOT_DIRECTORY);
 
         Random random = new Random();
         List<StopPoint> stopPoints = network.getStopPoints();
@@ -13,6 +13,7 @@ import tools.CsvReader;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class BenchmarkingKsspApplication {
 
@@ -35,11 +36,9 @@ public class BenchmarkingKsspApplication {
         BenchmarkingMethod method = BenchmarkingMethod.RANDOM;
         Algorithm algorithm = Algorithm.POSTPONEDKSSP;
 
-        PublicTransitNetwork network = new PublicTransitNetwork();
-        GtfsImport gtfsImport = new GtfsImport(city);
+        GtfsImport gtfsImport = new GtfsImport(city, ForkJoinPool.commonPool());
 
-        gtfsImport.readFiles(RoutingApplication.LOAD_DATE, network);
-        network.updatingNetwork();
+        PublicTransitNetwork network = gtfsImport.loadNetwork(RoutingApplication.LOAD_DATE, RoutingApplication.SNAPSHOT_DIRECTORY);
 
 
         List<List<String>> runTimes = new ArrayList<>();
@@ -13,6 +13,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class OriginDestinationCreation {
@@ -132,11 +133,9 @@ public class OriginDestinationCreation {
         City city = City.SWITZERLAND;
         BenchmarkingMethod method = BenchmarkingMethod.RANDOM;
 
-        PublicTransitNetwork network = new PublicTransitNetwork();
-        GtfsImport gtfsImport = new GtfsImport(city);
+        GtfsImport gtfsImport = new GtfsImport(city, ForkJoinPool.commonPool());
 
-        gtfsImport.readFiles(RoutingApplication.LOAD_DATE, network);
-        network.updatingNetwork();
+        PublicTransitNetwork network = gtfsImport.loadNetwork(RoutingApplication.LOAD_DATE, RoutingApplication.SNAPSHOT_DIRECTORY);
 
         List<String> coordinates;
 
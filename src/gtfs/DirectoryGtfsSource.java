@@ -0,0 +1,42 @@
+package gtfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class DirectoryGtfsSource implements GtfsSource {
+
+    private Path directory;
+
+    DirectoryGtfsSource(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+        return Files.isRegularFile(directory.resolve(fileName));
+    }
+
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        return Files.newInputStream(directory.resolve(fileName));
+    }
+
+    @Override
+    public long randomAccessSize(String fileName) throws IOException {
+        return Files.size(directory.resolve(fileName));
+    }
+
+    @Override
+    public ReadableByteChannel openAt(String fileName, long position) throws IOException {
+        return FileChannel.open(directory.resolve(fileName), StandardOpenOption.READ).position(position);
+    }
+
+    @Override
+    public void close() {
+    }
+}
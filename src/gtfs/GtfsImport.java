@@ -1,19 +1,23 @@
 package gtfs;
 
-import com.opencsv.CSVReader;
 import core.City;
 import network.*;
-import org.apache.commons.lang3.StringUtils;
+import tools.ByteKeyMap;
 import tools.CsvReader;
 import tools.Pair;
 
 import java.io.*;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.time.DayOfWeek;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GtfsImport {
 
@@ -21,105 +25,168 @@ public class GtfsImport {
     private static final String LOCAL_DATE_FORMAT = "yyyyMMdd";
 
     private City city;
+    private Path feed;
+    private ForkJoinPool pool;
 
     public GtfsImport(City city) {
         this.city = city;
     }
 
+    // The independent files are then read concurrently and stop_times.txt is parsed in chunks on the pool
+    public GtfsImport(City city, ForkJoinPool pool) {
+        this.city = city;
+        this.pool = pool;
+    }
+
+    // Reads the feed of the city from the given directory or zip archive instead of gtfs/data, the pool may be null
+    public GtfsImport(City city, Path feed, ForkJoinPool pool) {
+        this.city = city;
+        this.feed = feed;
+        this.pool = pool;
+    }
+
+    // Returns the updated network for the load date, from its snapshot when one was already written for this feed and date
+    public PublicTransitNetwork loadNetwork(LocalDate loadDate, Path snapshotDirectory) {
+        return loadNetwork(loadDate, 1, snapshotDirectory);
+    }
+
+    // Returns a network holding the trips running on any of the service days starting at the first date
+    public PublicTransitNetwork loadNetwork(LocalDate firstDate, int numberOfDays, Path snapshotDirectory) {
+        return loadNetwork(firstDate, numberOfDays, Integer.MAX_VALUE, snapshotDirectory);
+    }
+
+    // The foot paths added between stop points are walks of at most maxWalkingTime seconds through the transfer file
+    public PublicTransitNetwork loadNetwork(LocalDate firstDate, int numberOfDays, int maxWalkingTime, Path snapshotDirectory) {
+
+        Path snapshot = NetworkSnapshot.snapshotPath(snapshotDirectory, city.toString(), firstDate, numberOfDays, maxWalkingTime);
+
+        if (Files.exists(snapshot)) {
+            try {
+                System.out.println(String.format("> Loading network snapshot %s", snapshot));
+                PublicTransitNetwork network = NetworkSnapshot.read(snapshot, city.toString(), firstDate, numberOfDays, maxWalkingTime);
+                System.out.println("> Network snapshot successfully loaded\n");
+                return network;
+            } catch (IOException e) {
+                System.out.println(String.format("Error while loading snapshot %s, rebuilding the network", snapshot));
+                e.printStackTrace();
+            }
+        }
+
+        PublicTransitNetwork network = new PublicTransitNetwork();
+        network.setMaxWalkingTime(maxWalkingTime);
+        readFiles(firstDate, numberOfDays, network);
+        network.updatingNetwork();
+
+        try {
+            NetworkSnapshot.write(network, city.toString(), firstDate, snapshot);
+            System.out.println(String.format("> Wrote network snapshot %s\n", snapshot));
+        } catch (IOException e) {
+            System.out.println(String.format("Error while writing snapshot %s", snapshot));
+            e.printStackTrace();
+        }
+
+        return network;
+    }
+
     public PublicTransitNetwork readFiles(LocalDate loadDate,
                                           PublicTransitNetwork network) {
+        return readFiles(loadDate, 1, network);
+    }
+
+    public PublicTransitNetwork readFiles(LocalDate firstDate,
+                                          int numberOfDays,
+                                          PublicTransitNetwork network) {
 
         Map<String, Integer> positionToStopPointId = new HashMap<>();
 
+        network.setServiceDays(firstDate, numberOfDays);
+
         System.out.println(String.format("> Loading public transit network for %s", city));
 
-        Set<String> services = new HashSet<>();
-        if (getClass().getResource("data/" + city.toString().toLowerCase() + "/calendar.txt") != null) {
-            services = readCalendar(loadDate);
+        try (GtfsSource source = feed == null ? GtfsSource.forCity(city) : GtfsSource.open(feed)) {
+            readFiles(source, firstDate, numberOfDays, network, positionToStopPointId);
+        } catch (IOException e) {
+            System.out.println(String.format("Error while opening the GTFS feed of %s", city));
+            e.printStackTrace();
         }
 
-        readCalendarDates(loadDate, services);
-        readStops(network, positionToStopPointId);
+        System.out.println("> Public transit network successfully loaded\n");
 
-        if (getClass().getResource("data/" + city.toString().toLowerCase() + "/transfers.txt") != null) {
-            readTransfers(network, positionToStopPointId);
+        return network;
+    }
+
+    private void readFiles(GtfsSource source,
+                           LocalDate firstDate,
+                           int numberOfDays,
+                           PublicTransitNetwork network,
+                           Map<String, Integer> positionToStopPointId) {
+
+        if (pool == null) {
+            Map<String, Long> services = readServices(source, firstDate, numberOfDays);
+            readStopsAndTransfers(source, network, positionToStopPointId);
+            readRoutes(source, network);
+            readTrips(source, network, services);
+        } else {
+            // Calendars, stops and routes do not depend on each other, the trips need the routes and the services
+            CompletableFuture<Map<String, Long>> services = CompletableFuture.supplyAsync(() -> readServices(source, firstDate, numberOfDays), pool);
+            CompletableFuture<Void> stops = CompletableFuture.runAsync(() -> readStopsAndTransfers(source, network, positionToStopPointId), pool);
+            CompletableFuture<Void> trips = CompletableFuture.runAsync(() -> readRoutes(source, network), pool).
+                    thenAcceptBothAsync(services, (routes, serviceDays) -> readTrips(source, network, serviceDays), pool);
+
+            CompletableFuture.allOf(stops, trips).join();
         }
 
-        readRoutes(network);
-        readTrips(network, services);
-        readStopTimes(network, positionToStopPointId);
+        readStopTimes(source, network, positionToStopPointId);
+    }
 
-        System.out.println("> Public transit network successfully loaded\n");
+    // Returns the days on which each service runs, bit d standing for the first date plus d days
+    private Map<String, Long> readServices(GtfsSource source, LocalDate firstDate, int numberOfDays) {
 
-        return network;
+        Map<String, Long> services = new HashMap<>();
+        if (source.exists("calendar.txt")) {
+            services = readCalendar(source, firstDate, numberOfDays);
+        }
+
+        readCalendarDates(source, firstDate, numberOfDays, services);
+
+        return services;
+    }
+
+    private void readStopsAndTransfers(GtfsSource source, PublicTransitNetwork network,
+                                       Map<String, Integer> positionToStopPointId) {
+
+        readStops(source, network, positionToStopPointId);
+
+        if (source.exists("transfers.txt")) {
+            readTransfers(source, network, positionToStopPointId);
+        }
     }
 
-    private Set<String> readCalendar(LocalDate loadDate) {
-
-        Set<String> services = new HashSet<>();
-
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/calendar.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
-
-            for (Map<String, String> line : lines) {
-
-                String id = line.get("service_id");
-                String startDateString = line.get("start_date");
-                String endDateString = line.get("end_date");
-                boolean isMonday = line.get("monday").equals("1");
-                boolean isTuesday = line.get("tuesday").equals("1");
-                boolean isWednesday = line.get("wednesday").equals("1");
-                boolean isThursday = line.get("thursday").equals("1");
-                boolean isFriday = line.get("friday").equals("1");
-                boolean isSaturday = line.get("saturday").equals("1");
-                boolean isSunday = line.get("sunday").equals("1");
-
-                LocalDate startDate = LocalDate.parse(startDateString, DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT));
-                LocalDate endDate = LocalDate.parse(endDateString, DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT));
-
-                if (loadDate.isAfter(startDate) && loadDate.isBefore(endDate) || loadDate.isEqual(startDate) || loadDate.isEqual(endDate)) {
-
-                    DayOfWeek dayOfWeek = DayOfWeek.from(loadDate);
-
-                    switch (dayOfWeek) {
-                        case MONDAY:
-                            if (isMonday) {
-                                services.add(id);
-                            }
-                            break;
-                        case TUESDAY:
-                            if (isTuesday) {
-                                services.add(id);
-                            }
-                            break;
-                        case WEDNESDAY:
-                            if (isWednesday) {
-                                services.add(id);
-                            }
-                            break;
-                        case THURSDAY:
-                            if (isThursday) {
-                                services.add(id);
-                            }
-                            break;
-                        case FRIDAY:
-                            if (isFriday) {
-                                services.add(id);
-                            }
-                            break;
-                        case SATURDAY:
-                            if (isSaturday) {
-                                services.add(id);
-                            }
-                            break;
-                        case SUNDAY:
-                            if (isSunday) {
-                                services.add(id);
-                            }
-                            break;
+    private Map<String, Long> readCalendar(GtfsSource source, LocalDate firstDate, int numberOfDays) {
+
+        Map<String, Long> services = new HashMap<>();
+        String[] columns = {"service_id", "start_date", "end_date", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"};
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT);
+
+        try (InputStream file = source.open("calendar.txt")) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
+
+                LocalDate startDate = LocalDate.parse(line.getString(1), formatter);
+                LocalDate endDate = LocalDate.parse(line.getString(2), formatter);
+                long serviceDays = 0;
+
+                for (int day = 0; day < numberOfDays; day++) {
+                    LocalDate date = firstDate.plusDays(day);
+
+                    if (!date.isBefore(startDate) && !date.isAfter(endDate) && line.equals(2 + date.getDayOfWeek().getValue(), '1')) {
+                        serviceDays |= 1L << day;
                     }
                 }
-            }
+
+                if (serviceDays != 0) {
+                    services.merge(line.getString(0), serviceDays, (a, b) -> a | b);
+                }
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -129,77 +196,72 @@ public class GtfsImport {
         return services;
     }
 
-    private void readCalendarDates(LocalDate loadDate, Set<String> services) {
+    private void readCalendarDates(GtfsSource source, LocalDate firstDate, int numberOfDays, Map<String, Long> services) {
 
-        int counter = 0;
+        AtomicInteger counter = new AtomicInteger();
+        String[] columns = {"service_id", "date", "exception_type"};
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT);
 
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/calendar_dates.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
+        try (InputStream file = source.open("calendar_dates.txt")) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
 
-            for (Map<String, String> line : lines) {
+                long day = ChronoUnit.DAYS.between(firstDate, LocalDate.parse(line.getString(1), formatter));
 
-                String id = line.get("service_id");
-                String dateString = line.get("date");
-                String exceptionType = line.get("exception_type");
-                LocalDate date = LocalDate.parse(dateString, DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT));
-
-                if (date.isEqual(loadDate)) {
-                    if (exceptionType.equals("1")) {
-                        services.add(id);
-                        counter++;
-                    } else if (exceptionType.equals("2")) {
-                        services.remove(id);
-                        counter++;
+                if (day >= 0 && day < numberOfDays) {
+                    if (line.equals(2, '1')) {
+                        services.merge(line.getString(0), 1L << day, (a, b) -> a | b);
+                        counter.incrementAndGet();
+                    } else if (line.equals(2, '2')) {
+                        services.computeIfPresent(line.getString(0), (id, serviceDays) -> serviceDays & ~(1L << day));
+                        counter.incrementAndGet();
                     }
                 }
-            }
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        System.out.println(String.format("      > Updated %s services", counter));
+        System.out.println(String.format("      > Updated %s services", counter.get()));
     }
 
-    private void readStops(PublicTransitNetwork network,
+    private void readStops(GtfsSource source, PublicTransitNetwork network,
                            Map<String, Integer> positionToStopPointId) {
 
         List<StopPoint> stopPoints = new ArrayList<>();
         List<StopArea> stopAreas = new ArrayList<>();
-        int stopPointCounter = network.getStopPoints().size();
-        int stopAreaCounter = network.getStopAreas().size();
+        int stopPointOffset = network.getStopPoints().size();
+        int stopAreaOffset = network.getStopAreas().size();
         Map<String, Integer> positionToStopAreaId = new HashMap<>();
+        String[] columns = {"stop_id", "stop_name", "stop_lat", "stop_lon", "parent_station", "location_type"};
 
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/stops.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
+        try (InputStream file = source.open("stops.txt")) {
             List<Pair<String, String>> parents = new ArrayList<>();
 
-            for (Map<String, String> line : lines) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
 
-                String id = line.get("stop_id");
-                String name = line.get("stop_name");
-                double latitude = Double.parseDouble(line.get("stop_lat"));
-                double longitude = Double.parseDouble(line.get("stop_lon"));
-                String parentId = line.get("parent_station");
-                String locationType = line.get("location_type");
+                String id = line.getString(0);
+                String name = line.getString(1);
+                double latitude = line.getDouble(2);
+                double longitude = line.getDouble(3);
 
-                if (!StringUtils.isEmpty(locationType) && locationType.equals("1")) {
-                    stopAreas.add(new StopArea(id, stopAreaCounter, name, latitude, longitude));
-                    positionToStopAreaId.put(id, stopAreaCounter);
-                    stopAreaCounter++;
+                if (line.equals(5, '1')) {
+                    int stopAreaPosition = stopAreaOffset + stopAreas.size();
+                    stopAreas.add(new StopArea(id, stopAreaPosition, name, latitude, longitude));
+                    positionToStopAreaId.put(id, stopAreaPosition);
                 } else {
-                    stopPoints.add(new StopPoint(id, stopPointCounter, name, latitude, longitude));
-                    positionToStopPointId.put(id, stopPointCounter);
-                    stopPointCounter++;
+                    int stopPointPosition = stopPointOffset + stopPoints.size();
+                    stopPoints.add(new StopPoint(id, stopPointPosition, name, latitude, longitude));
+                    positionToStopPointId.put(id, stopPointPosition);
                 }
 
-                if (!StringUtils.isEmpty(parentId)) {
-                    parents.add(new Pair<>(id, parentId));
+                if (!line.isEmpty(4)) {
+                    parents.add(new Pair<>(id, line.getString(4)));
                 }
-            }
+            });
 
             for (Pair<String, String> pair : parents) {
-                StopPoint stopPoint = stopPoints.get(positionToStopPointId.get(pair.getLeft()) - network.getStopPoints().size());
-                StopArea stopArea = stopAreas.get(positionToStopAreaId.get(pair.getRight()) - network.getStopAreas().size());
+                StopPoint stopPoint = stopPoints.get(positionToStopPointId.get(pair.getLeft()) - stopPointOffset);
+                StopArea stopArea = stopAreas.get(positionToStopAreaId.get(pair.getRight()) - stopAreaOffset);
 
                 stopPoint.setParent(stopArea);
                 stopArea.getChildren().add(stopPoint);
@@ -220,32 +282,29 @@ public class GtfsImport {
         }
     }
 
-    private void readTransfers(PublicTransitNetwork network,
+    private void readTransfers(GtfsSource source, PublicTransitNetwork network,
                                Map<String, Integer> positionToStopPointId) {
 
         List<List<FootPath>> footPaths = new ArrayList<>();
         network.getStopPoints().forEach(e -> footPaths.add(new ArrayList<>()));
+        String[] columns = {"from_stop_id", "to_stop_id", "min_transfer_time"};
 
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/transfers.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
-
-            for (Map<String, String> line : lines) {
+        try (InputStream file = source.open("transfers.txt")) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
 
-                String fromId = line.get("from_stop_id");
-                String toId = line.get("to_stop_id");
-                String transferTime = line.get("min_transfer_time");
+                String fromId = line.getString(0);
+                String toId = line.getString(1);
 
                 if (fromId.equals(toId)) {
-                    continue;
+                    return;
                 }
 
-                if (!StringUtils.isEmpty(transferTime) && positionToStopPointId.containsKey(fromId) && positionToStopPointId.containsKey(toId)) {
+                if (!line.isEmpty(2) && positionToStopPointId.containsKey(fromId) && positionToStopPointId.containsKey(toId)) {
                     if (footPaths.get(positionToStopPointId.get(fromId)).stream().noneMatch(e -> e.getTo().getPosition() == positionToStopPointId.get(toId))) {
-                        footPaths.get(positionToStopPointId.get(fromId)).add(new FootPath(network.getStopPoints().get(positionToStopPointId.get(fromId)), network.getStopPoints().get(positionToStopPointId.get(toId)), Integer.parseInt(transferTime)));
+                        footPaths.get(positionToStopPointId.get(fromId)).add(new FootPath(network.getStopPoints().get(positionToStopPointId.get(fromId)), network.getStopPoints().get(positionToStopPointId.get(toId)), line.getInt(2)));
                     }
-//                    footPaths.get(positionToStopPointId.get(fromId)).add(new FootPath(network.getStopPoints().get(positionToStopPointId.get(fromId)), network.getStopPoints().get(positionToStopPointId.get(toId)), (int) network.getStopPoints().get(positionToStopPointId.get(fromId)).distanceTo(network.getStopPoints().get(positionToStopPointId.get(toId)))));
                 }
-            }
+            });
 
             System.out.println(String.format("      > Loaded %s foot paths", footPaths.stream().mapToInt(List::size).sum()));
 
@@ -256,19 +315,16 @@ public class GtfsImport {
         }
     }
 
-    private void readRoutes(PublicTransitNetwork network) {
+    private void readRoutes(GtfsSource source, PublicTransitNetwork network) {
 
         Map<String, Route> routes = new HashMap<>();
+        String[] columns = {"route_id", "route_short_name", "route_long_name", "route_type"};
 
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/routes.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
-
-            for (Map<String, String> line : lines) {
+        try (InputStream file = source.open("routes.txt")) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
 
-                String id = line.get("route_id");
-                String shortName = line.get("route_short_name");
-                String longName = line.get("route_long_name");
-                int type = Integer.parseInt(line.get("route_type"));
+                String id = line.getString(0);
+                int type = line.getInt(3);
                 PublicTransitMode mode = PublicTransitMode.BUS;
 
                 switch (type) {
@@ -299,8 +355,8 @@ public class GtfsImport {
                     default:
                 }
 
-                routes.put(id, new Route(id, StringUtils.isEmpty(shortName) ? longName : shortName, mode));
-            }
+                routes.put(id, new Route(id, line.isEmpty(1) ? line.getString(2) : line.getString(1), mode));
+            });
 
             System.out.println(String.format("      > Loaded %s routes", routes.size()));
 
@@ -311,26 +367,24 @@ public class GtfsImport {
         }
     }
 
-    private void readTrips(PublicTransitNetwork network, Set<String> services) {
+    private void readTrips(GtfsSource source, PublicTransitNetwork network, Map<String, Long> services) {
 
         Map<String, Trip> trips = new HashMap<>();
+        String[] columns = {"trip_id", "trip_short_name", "trip_headsign", "service_id", "direction_id", "route_id"};
 
-        try (InputStream file = getClass().getResourceAsStream("data/" + city.toString().toLowerCase() + "/trips.txt")) {
-            List<Map<String, String>> lines = CsvReader.readCsvWithHeader(file, ',');
-
-            for (Map<String, String> line : lines) {
+        try (InputStream file = source.open("trips.txt")) {
+            CsvReader.forEachRow(file, ',', columns, line -> {
 
-                String id = line.get("trip_id");
-                String name = line.get("trip_short_name");
-                String headsign = line.get("trip_headsign");
-                String serviceId = line.get("service_id");
-                int directionId = Integer.parseInt(line.get("direction_id"));
-                String routeId = line.get("route_id");
+                int directionId = line.getInt(4);
+                long serviceDays = services.getOrDefault(line.getString(3), 0L);
 
-                if (services.contains(serviceId)) {
-                    trips.put(id, new Trip(id, name, headsign, directionId, network.getRoutes().get(routeId)));
+                if (serviceDays != 0) {
+                    String id = line.getString(0);
+                    Trip trip = new Trip(id, line.getString(1), line.getString(2), directionId, network.getRoutes().get(line.getString(5)));
+                    trip.setServiceDays(serviceDays);
+                    trips.put(id, trip);
                 }
-            }
+            });
 
             System.out.println(String.format("      > Loaded %s trips", trips.size()));
 
@@ -341,74 +395,40 @@ public class GtfsImport {
         }
     }
 
-    private void readStopTimes(PublicTransitNetwork network,
+    private void readStopTimes(GtfsSource source, PublicTransitNetwork network,
                                Map<String, Integer> positionToStopPointId) {
 
-        List<Timetable> timetables = new ArrayList<>();
-
-        try (FileInputStream file = new FileInputStream(getClass().getResource("data/" + city.toString().toLowerCase() + "/stop_times.txt").getPath())) {
+        ByteKeyMap<Trip> trips = new ByteKeyMap<>(network.getTrips().size());
+        network.getTrips().forEach(trips::put);
 
-            try (CSVReader reader = new CSVReader(new InputStreamReader(file, Charset.defaultCharset()))) {
-                String[] columnNames = reader.readNext();
+        ByteKeyMap<StopPoint> stopPoints = new ByteKeyMap<>(positionToStopPointId.size());
+        positionToStopPointId.forEach((id, position) -> stopPoints.put(id, network.getStopPoints().get(position)));
 
-                if (columnNames == null) {
-                    return;
-                }
+        StopTimesParser parser = new StopTimesParser(trips, stopPoints);
 
-                CsvReader.readColumnNames(columnNames);
-
-                String[] line;
-                while ((line = reader.readNext()) != null) {
-
-                    String tripId = "";
-                    String stopId = "";
-                    String arrivalTime = "";
-                    String departureTime = "";
-                    int stopSequence = 0;
-                    int pickupType = 0;
-                    int dropOffType = 0;
-
-                    for (int ci = 0; ci < line.length; ++ci) {
-                        switch (columnNames[ci]) {
-                            case "trip_id":
-                                tripId = line[ci];
-                                break;
-                            case "stop_id":
-                                stopId = line[ci];
-                                break;
-                            case "stop_sequence":
-                                stopSequence = Integer.parseInt(line[ci]);
-                                break;
-                            case "departure_time":
-                                departureTime = line[ci];
-                                break;
-                            case "arrival_time":
-                                arrivalTime = line[ci];
-                                break;
-                            // TODO add drop off and pick up type
-//                            case "pickup_type":
-//                                pickupType = Integer.parseInt(line[ci]);
-//                                break;
-//                            case "drop_off_type":
-//                                dropOffType = Integer.parseInt(line[ci]);
-//                                break;
-                        }
-                    }
+        try {
 
-                    String[] splitDeparture = departureTime.split(":");
-                    int departureSeconds = Integer.parseInt(splitDeparture[2]) + Integer.parseInt(splitDeparture[1]) * 60 + Integer.parseInt(splitDeparture[0]) * 3600;
-                    String[] splitArrival = arrivalTime.split(":");
-                    int arrivalSeconds = Integer.parseInt(splitArrival[2]) + Integer.parseInt(splitArrival[1]) * 60 + Integer.parseInt(splitArrival[0]) * 3600;
+            List<Timetable> timetables;
+            long size = source.randomAccessSize("stop_times.txt");
 
-                    if (network.getTrips().containsKey(tripId)) {
-                        Trip trip = network.getTrips().get(tripId);
-                        Timetable timetable = new Timetable(network.getStopPoints().get(positionToStopPointId.get(stopId)), trip, departureTime, arrivalTime, departureSeconds, arrivalSeconds, stopSequence);
-                        timetables.add(timetable);
-                        trip.getTimetables().add(timetable);
-                    }
+            if (pool == null) {
+                try (InputStream file = source.open("stop_times.txt")) {
+                    timetables = parser.parse(Channels.newChannel(file));
+                }
+            } else if (size != -1) {
+                timetables = parser.parse(position -> source.openAt("stop_times.txt", position), size, pool);
+            } else {
+                try (InputStream file = source.open("stop_times.txt")) {
+                    timetables = parser.parse(Channels.newChannel(file), pool);
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
+            }
+
+            for (Timetable timetable : timetables) {
+                timetable.getTrip().getTimetables().add(timetable);
+            }
+
+            if (parser.getSkippedLines() > 0) {
+                System.out.println(String.format("      > Skipped %s stop times", parser.getSkippedLines()));
             }
 
             System.out.println(String.format("      > Loaded %s timetables", timetables.size()));
@@ -0,0 +1,62 @@
+package gtfs;
+
+import core.City;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Files of a GTFS feed, read from a directory, a zip archive or the classpath without extracting anything
+public interface GtfsSource extends Closeable {
+
+    boolean exists(String fileName);
+
+    InputStream open(String fileName) throws IOException;
+
+    // Size of the file when it can be read from any byte position with openAt, -1 when it can only be streamed
+    long randomAccessSize(String fileName) throws IOException;
+
+    ReadableByteChannel openAt(String fileName, long position) throws IOException;
+
+
+    // The feed is either a directory holding the files or a zip archive
+    static GtfsSource open(Path feed) throws IOException {
+        if (Files.isDirectory(feed)) {
+            return new DirectoryGtfsSource(feed);
+        }
+        return new ZipGtfsSource(feed);
+    }
+
+
+    // The feed of a city is looked up in gtfs/data, either extracted in a directory named after the city or as the zip archive.
+    // An archive which is not a file, for example packaged in a jar, is streamed
+    static GtfsSource forCity(City city) throws IOException {
+        String name = city.toString().toLowerCase();
+
+        if (GtfsImport.class.getResource("data/" + name + "/stops.txt") != null) {
+            return new ResourceGtfsSource("data/" + name + "/");
+        }
+
+        URL archive = GtfsImport.class.getResource("data/" + name + ".zip");
+
+        if (archive == null) {
+            throw new IOException(String.format("No GTFS feed found for %s", city));
+        }
+
+        if (!archive.getProtocol().equals("file")) {
+            return new ZipStreamGtfsSource(archive);
+        }
+
+        try {
+            return new ZipGtfsSource(Paths.get(archive.toURI()));
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package gtfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Feed extracted on the classpath, the files are only streamed when they are packaged in a jar
+class ResourceGtfsSource implements GtfsSource {
+
+    private String prefix;
+
+    ResourceGtfsSource(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+        return GtfsImport.class.getResource(prefix + fileName) != null;
+    }
+
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        InputStream stream = GtfsImport.class.getResourceAsStream(prefix + fileName);
+
+        if (stream == null) {
+            throw new IOException(String.format("Missing %s%s resource", prefix, fileName));
+        }
+
+        return stream;
+    }
+
+    @Override
+    public long randomAccessSize(String fileName) throws IOException {
+        Path path = path(fileName);
+        return path == null ? -1 : Files.size(path);
+    }
+
+    @Override
+    public ReadableByteChannel openAt(String fileName, long position) throws IOException {
+        Path path = path(fileName);
+
+        if (path == null) {
+            throw new IOException(String.format("%s%s can only be streamed", prefix, fileName));
+        }
+
+        return FileChannel.open(path, StandardOpenOption.READ).position(position);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Path path(String fileName) throws IOException {
+        URL url = GtfsImport.class.getResource(prefix + fileName);
+
+        if (url == null || !url.getProtocol().equals("file")) {
+            return null;
+        }
+
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+}
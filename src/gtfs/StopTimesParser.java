@@ -0,0 +1,401 @@
+package gtfs;
+
+import network.StopPoint;
+import network.Timetable;
+import network.Trip;
+import tools.ByteKeyMap;
+import tools.CsvByteReader;
+import tools.CsvRow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Reads stop_times.txt on the raw bytes : the columns are resolved once from the header, the times are parsed directly
+// to seconds and the trip and stop ids are looked up without creating strings
+class StopTimesParser {
+
+    private static final int MINIMUM_CHUNK_SIZE = 1 << 22;
+    private static final int BLOCK_SIZE = 1 << 23;
+
+    // Opens the file at the given byte position, so that each chunk can be read independently
+    interface ChannelOpener {
+        ReadableByteChannel open(long position) throws IOException;
+    }
+
+    private ByteKeyMap<Trip> trips;
+    private ByteKeyMap<StopPoint> stopPoints;
+    private String[] columnNames;
+    private int tripColumn;
+    private int stopColumn;
+    private int arrivalColumn;
+    private int departureColumn;
+    private int sequenceColumn;
+    private int lastColumn;
+    private String[] timeStrings = new String[48 * 3600];
+    private int skippedLines;
+    private long chunkStart = -1;
+
+    StopTimesParser(ByteKeyMap<Trip> trips, ByteKeyMap<StopPoint> stopPoints) {
+        this.trips = trips;
+        this.stopPoints = stopPoints;
+    }
+
+    // Parser for one chunk, sharing the lookup tables and the columns but not the time strings nor the counters
+    private StopTimesParser(StopTimesParser parser) {
+        this.trips = parser.trips;
+        this.stopPoints = parser.stopPoints;
+        this.columnNames = parser.columnNames;
+        this.tripColumn = parser.tripColumn;
+        this.stopColumn = parser.stopColumn;
+        this.arrivalColumn = parser.arrivalColumn;
+        this.departureColumn = parser.departureColumn;
+        this.sequenceColumn = parser.sequenceColumn;
+        this.lastColumn = parser.lastColumn;
+    }
+
+    List<Timetable> parse(ReadableByteChannel channel) throws IOException {
+
+        List<Timetable> timetables = new ArrayList<>();
+
+        try (CsvByteReader reader = new CsvByteReader(channel, ',')) {
+            if (readColumns(reader)) {
+                parseLines(reader, Long.MAX_VALUE, timetables);
+            }
+        }
+
+        return timetables;
+    }
+
+    // Splits the file in byte ranges parsed on the pool, the timetables are returned in the order of the file
+    List<Timetable> parse(ChannelOpener opener, long size, ForkJoinPool pool) throws IOException {
+
+        long headerEnd;
+
+        try (CsvByteReader reader = new CsvByteReader(opener.open(0), ',', 1 << 16)) {
+            if (!readColumns(reader)) {
+                return new ArrayList<>();
+            }
+            headerEnd = reader.getPosition();
+        }
+
+        long chunkCount = Math.max(1, Math.min(pool.getParallelism() * 4L, (size - headerEnd) / MINIMUM_CHUNK_SIZE));
+        List<StopTimesParser> parsers = new ArrayList<>();
+        List<ForkJoinTask<List<Timetable>>> tasks = new ArrayList<>();
+
+        for (long k = 0; k < chunkCount; k++) {
+            long start = headerEnd + (size - headerEnd) * k / chunkCount;
+            long end = headerEnd + (size - headerEnd) * (k + 1) / chunkCount;
+            StopTimesParser parser = new StopTimesParser(this);
+
+            parsers.add(parser);
+            tasks.add(pool.submit(() -> parser.parseChunk(opener, start, end, start == headerEnd)));
+        }
+
+        List<Timetable> timetables = new ArrayList<>();
+
+        try {
+            for (int k = 0; k < tasks.size(); k++) {
+                timetables.addAll(tasks.get(k).join());
+                skippedLines += parsers.get(k).skippedLines;
+            }
+        } catch (RuntimeException e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw new IOException("Error while parsing a chunk of stop_times.txt", e);
+        }
+
+        return timetables;
+    }
+
+    // Reads the stream on the calling thread, for example while inflating a zip entry, and parses blocks of whole lines on the pool
+    List<Timetable> parse(ReadableByteChannel channel, ForkJoinPool pool) throws IOException {
+
+        List<Timetable> timetables = new ArrayList<>();
+        List<StopTimesParser> parsers = new ArrayList<>();
+        List<ForkJoinTask<List<Timetable>>> tasks = new ArrayList<>();
+        int merged = 0;
+
+        byte[] block = new byte[BLOCK_SIZE];
+        int length = 0;
+        long blockStart = 0;
+        boolean endOfStream = false;
+        boolean header = true;
+
+        try {
+            while (!endOfStream) {
+                while (length < block.length && !endOfStream) {
+                    int read = channel.read(ByteBuffer.wrap(block, length, block.length - length));
+                    if (read == -1) {
+                        endOfStream = true;
+                    } else {
+                        length += read;
+                    }
+                }
+
+                int end = endOfStream ? length : lastLineEnd(block, length);
+
+                if (end == 0) {
+                    if (endOfStream) {
+                        break;
+                    }
+                    // A single line does not fit in the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+
+                int start = 0;
+
+                if (header) {
+                    header = false;
+                    int headerEnd = firstLineEnd(block, end);
+
+                    if (!readColumns(new CsvByteReader(block, 0, headerEnd, ','))) {
+                        return timetables;
+                    }
+
+                    start = headerEnd;
+                }
+
+                byte[] lines = block;
+                int linesStart = start;
+                int linesLength = end - start;
+                long linesPosition = blockStart + start;
+                StopTimesParser parser = new StopTimesParser(this);
+
+                parsers.add(parser);
+                tasks.add(pool.submit(() -> parser.parseBlock(lines, linesStart, linesLength, linesPosition)));
+
+                block = new byte[Math.max(BLOCK_SIZE, length - end)];
+                System.arraycopy(lines, end, block, 0, length - end);
+                length -= end;
+                blockStart += end;
+
+                // Bounds the number of blocks held in memory
+                while (tasks.size() - merged > pool.getParallelism() * 2) {
+                    timetables.addAll(tasks.get(merged).join());
+                    merged++;
+                }
+            }
+
+            for (; merged < tasks.size(); merged++) {
+                timetables.addAll(tasks.get(merged).join());
+            }
+        } catch (RuntimeException e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw new IOException("Error while parsing a block of stop_times.txt", e);
+        }
+
+        parsers.forEach(parser -> skippedLines += parser.skippedLines);
+
+        return timetables;
+    }
+
+    int getSkippedLines() {
+        return skippedLines;
+    }
+
+    // Parses the lines starting in [start, end), a line started before the chunk belongs to the previous one
+    private List<Timetable> parseChunk(ChannelOpener opener, long start, long end, boolean lineStart) throws IOException {
+
+        List<Timetable> timetables = new ArrayList<>();
+        long channelStart = lineStart ? start : start - 1;
+
+        try (CsvByteReader reader = new CsvByteReader(opener.open(channelStart), ',')) {
+            if (!lineStart) {
+                reader.skipLine();
+            }
+            chunkStart = channelStart + reader.getPosition();
+            parseLines(reader, end - channelStart, timetables);
+        }
+
+        return timetables;
+    }
+
+    // The position is the one of the first line in the file, the line numbers of the messages being counted from it
+    private List<Timetable> parseBlock(byte[] bytes, int offset, int length, long position) throws IOException {
+
+        List<Timetable> timetables = new ArrayList<>();
+        chunkStart = position;
+
+        try (CsvByteReader reader = new CsvByteReader(bytes, offset, length, ',')) {
+            parseLines(reader, Long.MAX_VALUE, timetables);
+        }
+
+        return timetables;
+    }
+
+    private static int firstLineEnd(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int lastLineEnd(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private boolean readColumns(CsvByteReader reader) throws IOException {
+
+        columnNames = reader.readHeader();
+
+        if (columnNames == null) {
+            return false;
+        }
+
+        List<String> columns = Arrays.asList(columnNames);
+        tripColumn = columns.indexOf("trip_id");
+        stopColumn = columns.indexOf("stop_id");
+        arrivalColumn = columns.indexOf("arrival_time");
+        departureColumn = columns.indexOf("departure_time");
+        sequenceColumn = columns.indexOf("stop_sequence");
+
+        if (tripColumn == -1 || stopColumn == -1 || arrivalColumn == -1 || departureColumn == -1) {
+            throw new IOException("Missing trip_id, stop_id, arrival_time or departure_time column in stop_times.txt");
+        }
+
+        lastColumn = Math.max(Math.max(tripColumn, stopColumn), Math.max(Math.max(arrivalColumn, departureColumn), sequenceColumn));
+
+        return true;
+    }
+
+    private void parseLines(CsvByteReader reader, long end, List<Timetable> timetables) throws IOException {
+
+        while (reader.getPosition() < end && reader.next()) {
+            CsvRow row = reader.getRow();
+
+            if (row.isEmptyLine()) {
+                continue;
+            }
+
+            if (row.size() <= lastColumn) {
+                System.out.println(String.format("Failed to parse line %s, found %s values, expecting %s", line(row), row.size(), columnNames.length));
+                skippedLines++;
+                continue;
+            }
+
+            Trip trip = trips.get(row, tripColumn);
+
+            if (trip == null) {
+                continue;
+            }
+
+            StopPoint stopPoint = stopPoints.get(row, stopColumn);
+            int departureSeconds = parseTime(row, departureColumn);
+            int arrivalSeconds = parseTime(row, arrivalColumn);
+
+            int stopSequence = sequenceColumn == -1 ? 0 : parseSequence(row);
+
+            // The timetable is kept without stop point so that its whole trip is removed by the network update
+            if (stopPoint == null || departureSeconds == -1 || arrivalSeconds == -1) {
+                System.out.println(String.format("Failed to parse line %s, unknown stop or invalid time, removing trip %s", line(row), trip.getId()));
+                skippedLines++;
+                timetables.add(new Timetable(null,
+                        trip,
+                        row.getString(departureColumn).trim(),
+                        row.getString(arrivalColumn).trim(),
+                        Math.max(departureSeconds, 0),
+                        Math.max(arrivalSeconds, 0),
+                        stopSequence));
+                continue;
+            }
+
+            timetables.add(new Timetable(stopPoint,
+                    trip,
+                    timeString(row, departureColumn, departureSeconds),
+                    timeString(row, arrivalColumn, arrivalSeconds),
+                    departureSeconds,
+                    arrivalSeconds,
+                    stopSequence));
+        }
+    }
+
+    // The error of an invalid sequence gives the line of the row in its chunk when the file is parsed by chunks
+    private int parseSequence(CsvRow row) throws IOException {
+        try {
+            return row.getInt(sequenceColumn);
+        } catch (NumberFormatException e) {
+            if (chunkStart == -1) {
+                throw e;
+            }
+            throw new IOException(String.format("Invalid stop_sequence at line %s", line(row)), e);
+        }
+    }
+
+    // Line number of the row, counted from the start of the chunk when the file is parsed by chunks
+    private String line(CsvRow row) {
+        if (chunkStart == -1) {
+            return Integer.toString(row.getLineNumber());
+        }
+
+        return String.format("%s of the chunk starting at byte %s", row.getLineNumber(), chunkStart);
+    }
+
+    // Parses H:MM:SS or HH:MM:SS, the hours being allowed to go past 24, returns -1 if the field is not a time
+    private static int parseTime(CsvRow row, int column) {
+        byte[] buffer = row.getBuffer();
+        int start = row.getStart(column);
+        int end = row.getEnd(column);
+
+        while (start < end && buffer[start] == ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+
+        int seconds = 0;
+        int value = 0;
+        int parts = 0;
+        boolean digits = false;
+
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer[i] == ':') {
+                if (!digits) {
+                    return -1;
+                }
+                seconds = seconds * 60 + value;
+                value = 0;
+                digits = false;
+                parts++;
+            } else {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+                digits = true;
+            }
+        }
+
+        return parts == 3 ? seconds : -1;
+    }
+
+    // The timetables keep the time as written in the file, equal times share the same string
+    private String timeString(CsvRow row, int column, int seconds) {
+        if (seconds >= timeStrings.length) {
+            timeStrings = Arrays.copyOf(timeStrings, Math.max(seconds + 1, timeStrings.length * 2));
+        }
+
+        String time = timeStrings[seconds];
+
+        if (time == null) {
+            time = row.getString(column).trim();
+            timeStrings[seconds] = time;
+        }
+
+        return time;
+    }
+}
@@ -0,0 +1,215 @@
+package gtfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Feed read from the zip archive, the files may be at the root of the archive or in a single directory.
+// Deflated files are streamed through the inflater, stored files can also be read from any byte position.
+class ZipGtfsSource implements GtfsSource {
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private Path archive;
+    private ZipFile zipFile;
+    private Map<String, ZipEntry> entries = new HashMap<>();
+    private Map<String, Long> dataOffsets;
+
+    ZipGtfsSource(Path archive) throws IOException {
+        this.archive = archive;
+        this.zipFile = new ZipFile(archive.toFile());
+
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            if (!entry.isDirectory()) {
+                entries.putIfAbsent(entry.getName().substring(entry.getName().lastIndexOf('/') + 1), entry);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+        return entries.containsKey(fileName);
+    }
+
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        return zipFile.getInputStream(entry(fileName));
+    }
+
+    @Override
+    public long randomAccessSize(String fileName) throws IOException {
+        ZipEntry entry = entry(fileName);
+
+        if (entry.getMethod() != ZipEntry.STORED || dataOffset(entry) == -1) {
+            return -1;
+        }
+
+        return entry.getSize();
+    }
+
+    @Override
+    public ReadableByteChannel openAt(String fileName, long position) throws IOException {
+        ZipEntry entry = entry(fileName);
+        long dataOffset = dataOffset(entry);
+
+        if (entry.getMethod() != ZipEntry.STORED || dataOffset == -1) {
+            throw new IOException(String.format("%s is compressed in %s and can only be streamed", fileName, archive));
+        }
+
+        FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ).position(dataOffset + position);
+
+        return new BoundedChannel(channel, entry.getSize() - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private ZipEntry entry(String fileName) throws IOException {
+        ZipEntry entry = entries.get(fileName);
+
+        if (entry == null) {
+            throw new IOException(String.format("Missing %s in %s", fileName, archive));
+        }
+
+        return entry;
+    }
+
+    // The offset of the data in the archive is not exposed by ZipFile, it is read from the central directory and the local header
+    private synchronized long dataOffset(ZipEntry entry) throws IOException {
+        if (dataOffsets == null) {
+            dataOffsets = readDataOffsets();
+        }
+
+        return dataOffsets.getOrDefault(entry.getName(), -1L);
+    }
+
+    // Zip64 archives are not handled, their entries are then only streamed
+    private Map<String, Long> readDataOffsets() throws IOException {
+
+        Map<String, Long> offsets = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            int tailLength = (int) Math.min(channel.size(), 22 + 0xFFFF);
+            ByteBuffer tail = read(channel, channel.size() - tailLength, tailLength);
+
+            int end = -1;
+            for (int i = tailLength - 22; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                    end = i;
+                    break;
+                }
+            }
+
+            if (end == -1) {
+                return offsets;
+            }
+
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+            if (directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL) {
+                return offsets;
+            }
+
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            int i = 0;
+
+            while (i + 46 <= directorySize && directory.getInt(i) == CENTRAL_DIRECTORY_HEADER) {
+                int nameLength = directory.getShort(i + 28) & 0xFFFF;
+                int extraLength = directory.getShort(i + 30) & 0xFFFF;
+                int commentLength = directory.getShort(i + 32) & 0xFFFF;
+                long headerOffset = directory.getInt(i + 42) & 0xFFFFFFFFL;
+
+                byte[] name = new byte[nameLength];
+                for (int k = 0; k < nameLength; k++) {
+                    name[k] = directory.get(i + 46 + k);
+                }
+
+                if (headerOffset != 0xFFFFFFFFL) {
+                    ByteBuffer header = read(channel, headerOffset, 30);
+                    if (header.getInt(0) == LOCAL_FILE_HEADER) {
+                        long dataOffset = headerOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+                        offsets.put(new String(name, StandardCharsets.UTF_8), dataOffset);
+                    }
+                }
+
+                i += 46 + nameLength + extraLength + commentLength;
+            }
+        }
+
+        return offsets;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of zip archive");
+            }
+        }
+
+        return buffer;
+    }
+
+
+    // Stops at the end of the stored entry instead of reading the rest of the archive
+    private static class BoundedChannel implements ReadableByteChannel {
+
+        private FileChannel channel;
+        private long remaining;
+
+        BoundedChannel(FileChannel channel, long remaining) {
+            this.channel = channel;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int limit = destination.limit();
+            if (destination.remaining() > remaining) {
+                destination.limit(destination.position() + (int) remaining);
+            }
+
+            int read = channel.read(destination);
+            destination.limit(limit);
+
+            if (read > 0) {
+                remaining -= read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package gtfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Feed read from a zip archive without random access, for example packaged in a jar. The archive is streamed from its start
+// each time a file is opened, the files may be at the root of the archive or in a single directory
+class ZipStreamGtfsSource implements GtfsSource {
+
+    private URL archive;
+    private Map<String, String> entries = new HashMap<>();
+
+    ZipStreamGtfsSource(URL archive) throws IOException {
+        this.archive = archive;
+
+        try (ZipInputStream stream = new ZipInputStream(archive.openStream())) {
+            ZipEntry entry;
+            while ((entry = stream.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    entries.putIfAbsent(entry.getName().substring(entry.getName().lastIndexOf('/') + 1), entry.getName());
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+        return entries.containsKey(fileName);
+    }
+
+    // The stream is positioned at the data of the entry, closing it closes the archive
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        String name = entries.get(fileName);
+
+        if (name == null) {
+            throw new IOException(String.format("Missing %s in %s", fileName, archive));
+        }
+
+        ZipInputStream stream = new ZipInputStream(archive.openStream());
+
+        try {
+            ZipEntry entry;
+            while ((entry = stream.getNextEntry()) != null) {
+                if (entry.getName().equals(name)) {
+                    return stream;
+                }
+            }
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+
+        stream.close();
+        throw new IOException(String.format("Missing %s in %s", fileName, archive));
+    }
+
+    @Override
+    public long randomAccessSize(String fileName) {
+        return -1;
+    }
+
+    @Override
+    public ReadableByteChannel openAt(String fileName, long position) throws IOException {
+        throw new IOException(String.format("%s can only be streamed from %s", fileName, archive));
+    }
+
+    @Override
+    public void close() {
+    }
+}
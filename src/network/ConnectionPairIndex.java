@@ -0,0 +1,101 @@
+package network;
+
+import tools.LongIntHashMap;
+
+// Indices of the connections between two stop points, and between two stop points on a given trip.
+// A pair or a trip pair is resolved to a row, the connections of the row r are connections[offsets[r]] to connections[offsets[r + 1] - 1]
+// in increasing order of index
+public class ConnectionPairIndex {
+
+    private LongIntHashMap pairRows;
+    private int[] pairOffsets;
+    private int[] pairConnections;
+    private LongIntHashMap tripPairRows;
+    private int[] tripPairOffsets;
+    private int[] tripPairConnections;
+
+    public ConnectionPairIndex(ConnectionTable connections) {
+        int size = connections.size();
+        int[] departurePositions = connections.getDeparturePositions();
+        int[] arrivalPositions = connections.getArrivalPositions();
+        int[] tripIndices = connections.getTripIndices();
+
+        this.pairRows = new LongIntHashMap(size / 4);
+        this.tripPairRows = new LongIntHashMap(size);
+        int[] pairs = new int[size];
+        int[] tripPairs = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            pairs[i] = row(pairRows, LongIntHashMap.pack(departurePositions[i], arrivalPositions[i]));
+            tripPairs[i] = row(tripPairRows, LongIntHashMap.pack(pairs[i], tripIndices[i]));
+        }
+
+        this.pairOffsets = offsets(pairs, pairRows.size());
+        this.pairConnections = members(pairs, pairOffsets);
+        this.tripPairOffsets = offsets(tripPairs, tripPairRows.size());
+        this.tripPairConnections = members(tripPairs, tripPairOffsets);
+    }
+
+    // Returns -1 if no connection goes from the departure to the arrival
+    public int pairRow(int departurePosition, int arrivalPosition) {
+        return pairRows.get(LongIntHashMap.pack(departurePosition, arrivalPosition));
+    }
+
+    // Returns -1 if the trip does not go from the departure to the arrival
+    public int tripPairRow(int departurePosition, int arrivalPosition, int tripIndex) {
+        int pair = pairRow(departurePosition, arrivalPosition);
+        return pair == -1 ? -1 : tripPairRows.get(LongIntHashMap.pack(pair, tripIndex));
+    }
+
+    public int[] getPairOffsets() {
+        return pairOffsets;
+    }
+
+    public int[] getPairConnections() {
+        return pairConnections;
+    }
+
+    public int[] getTripPairOffsets() {
+        return tripPairOffsets;
+    }
+
+    public int[] getTripPairConnections() {
+        return tripPairConnections;
+    }
+
+    private static int row(LongIntHashMap rows, long key) {
+        int row = rows.get(key);
+
+        if (row == -1) {
+            row = rows.size();
+            rows.put(key, row);
+        }
+
+        return row;
+    }
+
+    private static int[] offsets(int[] rows, int rowCount) {
+        int[] offsets = new int[rowCount + 1];
+
+        for (int row : rows) {
+            offsets[row + 1]++;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        return offsets;
+    }
+
+    private static int[] members(int[] rows, int[] offsets) {
+        int[] next = new int[offsets.length - 1];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        int[] members = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            members[next[rows[i]]++] = i;
+        }
+
+        return members;
+    }
+}
@@ -0,0 +1,140 @@
+package network;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Column oriented copy of the connections, in the same order as the connection list,
+// so that the connection scans only walk primitive arrays.
+// The connections departing from the stop point at position p are stopConnections[stopOffsets[p]] to stopConnections[stopOffsets[p + 1] - 1],
+// in increasing order of index and so of departure time, and the same holds for the connections arriving at a stop point.
+// The connection of sequence s of the trip of index t is tripConnections[tripOffsets[t] + s]
+public class ConnectionTable {
+
+    private int[] departurePositions;
+    private int[] arrivalPositions;
+    private int[] departureSeconds;
+    private int[] arrivalSeconds;
+    private int[] tripIndices;
+    private int[] sequences;
+    private int[] stopOffsets;
+    private int[] stopConnections;
+    private int[] arrivalStopOffsets;
+    private int[] arrivalStopConnections;
+    private int[] tripOffsets;
+    private int[] tripConnections;
+
+    public ConnectionTable(List<Connection> connections, int stopPointCount, int tripCount) {
+        int size = connections.size();
+
+        this.departurePositions = new int[size];
+        this.arrivalPositions = new int[size];
+        this.departureSeconds = new int[size];
+        this.arrivalSeconds = new int[size];
+        this.tripIndices = new int[size];
+        this.sequences = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Connection connection = connections.get(i);
+            this.departurePositions[i] = connection.getDeparturePosition();
+            this.arrivalPositions[i] = connection.getArrivalPosition();
+            this.departureSeconds[i] = connection.getDepartureSeconds();
+            this.arrivalSeconds[i] = connection.getArrivalSeconds();
+            this.tripIndices[i] = connection.getTripIndex();
+            this.sequences[i] = connection.getSequence();
+        }
+
+        this.stopOffsets = new int[stopPointCount + 1];
+        for (int i = 0; i < size; i++) {
+            this.stopOffsets[this.departurePositions[i] + 1]++;
+        }
+        for (int i = 0; i < stopPointCount; i++) {
+            this.stopOffsets[i + 1] += this.stopOffsets[i];
+        }
+
+        int[] next = Arrays.copyOf(this.stopOffsets, stopPointCount);
+        this.stopConnections = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.stopConnections[next[this.departurePositions[i]]++] = i;
+        }
+
+        this.arrivalStopOffsets = new int[stopPointCount + 1];
+        for (int i = 0; i < size; i++) {
+            this.arrivalStopOffsets[this.arrivalPositions[i] + 1]++;
+        }
+        for (int i = 0; i < stopPointCount; i++) {
+            this.arrivalStopOffsets[i + 1] += this.arrivalStopOffsets[i];
+        }
+
+        next = Arrays.copyOf(this.arrivalStopOffsets, stopPointCount);
+        this.arrivalStopConnections = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.arrivalStopConnections[next[this.arrivalPositions[i]]++] = i;
+        }
+
+        // The sequences of the connections of a trip go from 0 to the number of connections of the trip minus one
+        this.tripOffsets = new int[tripCount + 1];
+        for (int i = 0; i < size; i++) {
+            this.tripOffsets[this.tripIndices[i] + 1]++;
+        }
+        for (int i = 0; i < tripCount; i++) {
+            this.tripOffsets[i + 1] += this.tripOffsets[i];
+        }
+
+        this.tripConnections = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.tripConnections[this.tripOffsets[this.tripIndices[i]] + this.sequences[i]] = i;
+        }
+    }
+
+    public int size() {
+        return departurePositions.length;
+    }
+
+    public int[] getDeparturePositions() {
+        return departurePositions;
+    }
+
+    public int[] getArrivalPositions() {
+        return arrivalPositions;
+    }
+
+    public int[] getDepartureSeconds() {
+        return departureSeconds;
+    }
+
+    public int[] getArrivalSeconds() {
+        return arrivalSeconds;
+    }
+
+    public int[] getTripIndices() {
+        return tripIndices;
+    }
+
+    public int[] getSequences() {
+        return sequences;
+    }
+
+    public int[] getStopOffsets() {
+        return stopOffsets;
+    }
+
+    public int[] getStopConnections() {
+        return stopConnections;
+    }
+
+    public int[] getArrivalStopOffsets() {
+        return arrivalStopOffsets;
+    }
+
+    public int[] getArrivalStopConnections() {
+        return arrivalStopConnections;
+    }
+
+    public int[] getTripOffsets() {
+        return tripOffsets;
+    }
+
+    public int[] getTripConnections() {
+        return tripConnections;
+    }
+}
@@ -2,6 +2,8 @@ package network;
 
 public class FootPath {
 
+    private static final FootPath EMPTY_FOOT_PATH = new FootPath(null, null, -1);
+
     private StopPoint from;
     private StopPoint to;
     private int duration;
@@ -12,8 +14,9 @@ public class FootPath {
         this.duration = duration;
     }
 
+    // Shared, a foot path is never modified
     public static FootPath getEmptyFootPath() {
-        return new FootPath(null, null, -1);
+        return EMPTY_FOOT_PATH;
     }
 
     public StopPoint getFrom() {
@@ -0,0 +1,119 @@
+package network;
+
+import tools.LongMinHeap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Closes the foot paths of the transfer file : every stop point gets a foot path to each stop point it can walk to
+// within the maximum walking time, with the duration of the shortest walk. One bounded Dijkstra runs per stop point, in parallel.
+class FootPathClosure {
+
+    private FootPathTable transfers;
+    private int maxWalkingTime;
+    private ThreadLocal<Workspace> workspaces;
+
+    FootPathClosure(List<List<FootPath>> transfers, int maxWalkingTime) {
+        this.transfers = new FootPathTable(transfers);
+        this.maxWalkingTime = maxWalkingTime;
+        int stopCount = transfers.size();
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(stopCount));
+    }
+
+    FootPathTable compute() {
+
+        int stopCount = transfers.getOffsets().length - 1;
+        int[][] targets = new int[stopCount][];
+        int[][] durations = new int[stopCount][];
+
+        IntStream.range(0, stopCount).parallel().forEach(stop -> {
+            Workspace workspace = workspaces.get();
+            workspace.run(stop);
+            targets[stop] = workspace.targets();
+            durations[stop] = workspace.durations();
+        });
+
+        int[] offsets = new int[stopCount + 1];
+        for (int i = 0; i < stopCount; i++) {
+            offsets[i + 1] = offsets[i] + targets[i].length;
+        }
+
+        int[] allTargets = new int[offsets[stopCount]];
+        int[] allDurations = new int[offsets[stopCount]];
+        for (int i = 0; i < stopCount; i++) {
+            System.arraycopy(targets[i], 0, allTargets, offsets[i], targets[i].length);
+            System.arraycopy(durations[i], 0, allDurations, offsets[i], durations[i].length);
+        }
+
+        return new FootPathTable(offsets, allTargets, allDurations);
+    }
+
+
+    private class Workspace {
+
+        private int[] distances;
+        private int[] settled;
+        private int settledCount;
+        private LongMinHeap heap = new LongMinHeap(64);
+
+        Workspace(int stopCount) {
+            this.distances = new int[stopCount];
+            this.settled = new int[stopCount];
+            Arrays.fill(this.distances, Integer.MAX_VALUE);
+        }
+
+        // The reached stop points are kept in settled order, which is by duration then by position
+        void run(int source) {
+            int[] offsets = transfers.getOffsets();
+            int[] transferTargets = transfers.getTargets();
+            int[] transferDurations = transfers.getDurations();
+
+            for (int i = 0; i < settledCount; i++) {
+                distances[settled[i]] = Integer.MAX_VALUE;
+            }
+            settledCount = 0;
+            heap.clear();
+
+            distances[source] = 0;
+            heap.add(LongMinHeap.pack(0, source));
+
+            while (!heap.isEmpty()) {
+                long element = heap.poll();
+                int distance = LongMinHeap.key(element);
+                int stop = LongMinHeap.value(element);
+
+                if (distance > distances[stop] || distance < 0) {
+                    continue;
+                }
+
+                // Marks the stop as settled, a later entry with the same distance is then skipped
+                distances[stop] = -1 - distance;
+                settled[settledCount++] = stop;
+
+                for (int k = offsets[stop]; k < offsets[stop + 1]; k++) {
+                    int target = transferTargets[k];
+                    long newDistance = (long) distance + transferDurations[k];
+
+                    if (newDistance <= maxWalkingTime && newDistance < distances[target]) {
+                        distances[target] = (int) newDistance;
+                        heap.add(LongMinHeap.pack((int) newDistance, target));
+                    }
+                }
+            }
+        }
+
+        int[] targets() {
+            // The source is the first settled stop point
+            return Arrays.copyOfRange(settled, 1, settledCount);
+        }
+
+        int[] durations() {
+            int[] durations = new int[settledCount - 1];
+            for (int i = 1; i < settledCount; i++) {
+                durations[i - 1] = -1 - distances[settled[i]];
+            }
+            return durations;
+        }
+    }
+}
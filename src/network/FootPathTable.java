@@ -0,0 +1,121 @@
+package network;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Foot paths in compressed sparse rows : the foot paths from the stop point at position p are
+// the entries offsets[p] to offsets[p + 1] - 1 of the target and duration arrays.
+// In a reversed table the rows are the arrival stop points and the targets the departure stop points.
+public class FootPathTable {
+
+    private int[] offsets;
+    private int[] targets;
+    private int[] durations;
+    private int[] reversedIndices;
+
+    public FootPathTable(int[] offsets, int[] targets, int[] durations) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.durations = durations;
+    }
+
+    public FootPathTable(List<List<FootPath>> footPaths) {
+        this.offsets = new int[footPaths.size() + 1];
+
+        for (int i = 0; i < footPaths.size(); i++) {
+            this.offsets[i + 1] = this.offsets[i] + footPaths.get(i).size();
+        }
+
+        this.targets = new int[this.offsets[footPaths.size()]];
+        this.durations = new int[this.offsets[footPaths.size()]];
+
+        for (int i = 0; i < footPaths.size(); i++) {
+            int k = this.offsets[i];
+            for (FootPath footPath : footPaths.get(i)) {
+                this.targets[k] = footPath.getTo().getPosition();
+                this.durations[k] = footPath.getDuration();
+                k++;
+            }
+        }
+    }
+
+    // The rows of the reversed table keep the order of the departure stop points
+    public FootPathTable reverse() {
+        int stopCount = offsets.length - 1;
+        int[] reversedOffsets = new int[stopCount + 1];
+
+        for (int target : targets) {
+            reversedOffsets[target + 1]++;
+        }
+        for (int i = 0; i < stopCount; i++) {
+            reversedOffsets[i + 1] += reversedOffsets[i];
+        }
+
+        int[] next = Arrays.copyOf(reversedOffsets, stopCount);
+        int[] reversedTargets = new int[targets.length];
+        int[] reversedDurations = new int[targets.length];
+        int[] indices = new int[targets.length];
+
+        for (int i = 0; i < stopCount; i++) {
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int position = next[targets[k]]++;
+                reversedTargets[position] = i;
+                reversedDurations[position] = durations[k];
+                indices[position] = k;
+            }
+        }
+
+        FootPathTable reversed = new FootPathTable(reversedOffsets, reversedTargets, reversedDurations);
+        reversed.reversedIndices = indices;
+        return reversed;
+    }
+
+    // For a reversed table, the index of each foot path in the table it was reversed from, null otherwise
+    public int[] getReversedIndices() {
+        return reversedIndices;
+    }
+
+    // Position of the foot path in the target and duration arrays, -1 if there is no foot path between the stop points
+    public int indexOf(int from, int to) {
+        for (int k = offsets[from]; k < offsets[from + 1]; k++) {
+            if (targets[k] == to) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // Stop point whose row holds the foot path at the index
+    public int sourceOf(int index) {
+        int low = 0;
+        int high = offsets.length - 2;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (offsets[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    public int[] getDurations() {
+        return durations;
+    }
+}
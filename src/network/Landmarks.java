@@ -0,0 +1,268 @@
+package network;
+
+import tools.LongMinHeap;
+
+import java.util.Arrays;
+
+// Landmarks for lower bounds of the travel time between two stop points (ALT). The travel times to and from each landmark
+// are computed on a time independent graph whose edges are the shortest connection between two stop points and the foot paths,
+// so that for any stop points v and t and any landmark L : time(v, t) >= time(v, L) - time(t, L) and time(v, t) >= time(L, t) - time(L, v)
+public class Landmarks {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private int[] stops;
+    private int[][] distancesFrom;
+    private int[][] distancesTo;
+
+    Landmarks(int[] stops, int[][] distancesFrom, int[][] distancesTo) {
+        this.stops = stops;
+        this.distancesFrom = distancesFrom;
+        this.distancesTo = distancesTo;
+    }
+
+    // The landmarks are chosen one after the other as the stop point farthest from the ones already chosen
+    public static Landmarks compute(PublicTransitNetwork network, int count) {
+
+        StopGraph forward = new StopGraph(network, false);
+        StopGraph backward = new StopGraph(network, true);
+        int stopCount = network.getStopPoints().size();
+
+        int[] stops = new int[count];
+        int[][] distancesFrom = new int[count][];
+        int[][] distancesTo = new int[count][];
+        int[] scores = new int[stopCount];
+        Arrays.fill(scores, UNREACHABLE);
+
+        // The first landmark is the farthest from an arbitrary stop point, which is not kept
+        int seed = 0;
+        while (seed < stopCount && !forward.hasEdges(seed) && !backward.hasEdges(seed)) {
+            seed++;
+        }
+        if (seed == stopCount) {
+            return new Landmarks(new int[0], new int[0][], new int[0][]);
+        }
+        updateScores(scores, forward.distances(seed), backward.distances(seed));
+        scores[seed] = 0;
+
+        int landmarkCount = 0;
+        for (; landmarkCount < count; landmarkCount++) {
+            int landmark = -1;
+            for (int v = 0; v < stopCount; v++) {
+                if ((forward.hasEdges(v) || backward.hasEdges(v)) && scores[v] > 0 && (landmark == -1 || scores[v] > scores[landmark])) {
+                    landmark = v;
+                }
+            }
+
+            if (landmark == -1) {
+                break;
+            }
+
+            if (landmarkCount == 0) {
+                Arrays.fill(scores, UNREACHABLE);
+            }
+
+            stops[landmarkCount] = landmark;
+            distancesFrom[landmarkCount] = forward.distances(landmark);
+            distancesTo[landmarkCount] = backward.distances(landmark);
+            updateScores(scores, distancesFrom[landmarkCount], distancesTo[landmarkCount]);
+            scores[landmark] = 0;
+        }
+
+        return new Landmarks(Arrays.copyOf(stops, landmarkCount), Arrays.copyOf(distancesFrom, landmarkCount), Arrays.copyOf(distancesTo, landmarkCount));
+    }
+
+    public int size() {
+        return stops.length;
+    }
+
+    public int[] getStops() {
+        return stops;
+    }
+
+    // Travel times from the landmark of index l to each stop point, UNREACHABLE if there is no path
+    public int[] getDistancesFrom(int l) {
+        return distancesFrom[l];
+    }
+
+    // Travel times from each stop point to the landmark of index l, UNREACHABLE if there is no path
+    public int[] getDistancesTo(int l) {
+        return distancesTo[l];
+    }
+
+    // Fills the lower bounds of the travel time from each stop point to the target, UNREACHABLE if the target can not be reached
+    public void lowerBoundsTo(int target, int[] lowerBounds) {
+        Arrays.fill(lowerBounds, 0);
+
+        for (int l = 0; l < stops.length; l++) {
+            int[] to = distancesTo[l];
+            int[] from = distancesFrom[l];
+            int targetToLandmark = to[target];
+            int landmarkToTarget = from[target];
+
+            for (int v = 0; v < lowerBounds.length; v++) {
+                if (lowerBounds[v] == UNREACHABLE) {
+                    continue;
+                }
+
+                if (targetToLandmark != UNREACHABLE) {
+                    if (to[v] == UNREACHABLE) {
+                        lowerBounds[v] = UNREACHABLE;
+                        continue;
+                    }
+                    lowerBounds[v] = Math.max(lowerBounds[v], to[v] - targetToLandmark);
+                }
+
+                if (from[v] != UNREACHABLE) {
+                    if (landmarkToTarget == UNREACHABLE) {
+                        lowerBounds[v] = UNREACHABLE;
+                        continue;
+                    }
+                    lowerBounds[v] = Math.max(lowerBounds[v], landmarkToTarget - from[v]);
+                }
+            }
+        }
+    }
+
+    // Fills the lower bounds of the travel time from the source to each stop point, UNREACHABLE if the stop point can not be reached
+    public void lowerBoundsFrom(int source, int[] lowerBounds) {
+        Arrays.fill(lowerBounds, 0);
+
+        for (int l = 0; l < stops.length; l++) {
+            int[] to = distancesTo[l];
+            int[] from = distancesFrom[l];
+            int sourceToLandmark = to[source];
+            int landmarkToSource = from[source];
+
+            for (int v = 0; v < lowerBounds.length; v++) {
+                if (lowerBounds[v] == UNREACHABLE) {
+                    continue;
+                }
+
+                if (landmarkToSource != UNREACHABLE) {
+                    if (from[v] == UNREACHABLE) {
+                        lowerBounds[v] = UNREACHABLE;
+                        continue;
+                    }
+                    lowerBounds[v] = Math.max(lowerBounds[v], from[v] - landmarkToSource);
+                }
+
+                if (to[v] != UNREACHABLE) {
+                    if (sourceToLandmark == UNREACHABLE) {
+                        lowerBounds[v] = UNREACHABLE;
+                        continue;
+                    }
+                    lowerBounds[v] = Math.max(lowerBounds[v], sourceToLandmark - to[v]);
+                }
+            }
+        }
+    }
+
+    // The score of a stop point is its smallest round trip time to a landmark, unreached stop points come first
+    private static void updateScores(int[] scores, int[] from, int[] to) {
+        for (int v = 0; v < scores.length; v++) {
+            if (from[v] != UNREACHABLE && to[v] != UNREACHABLE) {
+                scores[v] = (int) Math.min(scores[v], Math.min((long) from[v] + to[v], UNREACHABLE - 1L));
+            }
+        }
+    }
+
+
+    // Time independent graph of the stop points in compressed sparse rows, reversed to compute the travel times to a stop point
+    private static class StopGraph {
+
+        private int[] offsets;
+        private int[] targets;
+        private int[] weights;
+
+        StopGraph(PublicTransitNetwork network, boolean reversed) {
+            ConnectionTable connections = network.getConnectionTable();
+            ConnectionPairIndex pairs = network.getConnectionPairIndex();
+            FootPathTable footPaths = network.getFootPathTable();
+            int stopCount = network.getStopPoints().size();
+            int pairCount = pairs.getPairOffsets().length - 1;
+            int edgeCount = pairCount + footPaths.size();
+
+            int[] edgeFrom = new int[edgeCount];
+            int[] edgeTo = new int[edgeCount];
+            int[] edgeWeights = new int[edgeCount];
+
+            for (int r = 0; r < pairCount; r++) {
+                int weight = Integer.MAX_VALUE;
+                for (int k = pairs.getPairOffsets()[r]; k < pairs.getPairOffsets()[r + 1]; k++) {
+                    int connection = pairs.getPairConnections()[k];
+                    weight = Math.min(weight, Math.max(0, connections.getArrivalSeconds()[connection] - connections.getDepartureSeconds()[connection]));
+                }
+
+                int connection = pairs.getPairConnections()[pairs.getPairOffsets()[r]];
+                edgeFrom[r] = connections.getDeparturePositions()[connection];
+                edgeTo[r] = connections.getArrivalPositions()[connection];
+                edgeWeights[r] = weight;
+            }
+
+            int e = pairCount;
+            for (int v = 0; v < stopCount; v++) {
+                for (int k = footPaths.getOffsets()[v]; k < footPaths.getOffsets()[v + 1]; k++) {
+                    edgeFrom[e] = v;
+                    edgeTo[e] = footPaths.getTargets()[k];
+                    edgeWeights[e] = footPaths.getDurations()[k];
+                    e++;
+                }
+            }
+
+            int[] rows = reversed ? edgeTo : edgeFrom;
+            int[] columns = reversed ? edgeFrom : edgeTo;
+
+            this.offsets = new int[stopCount + 1];
+            for (int row : rows) {
+                this.offsets[row + 1]++;
+            }
+            for (int v = 0; v < stopCount; v++) {
+                this.offsets[v + 1] += this.offsets[v];
+            }
+
+            int[] next = Arrays.copyOf(this.offsets, stopCount);
+            this.targets = new int[edgeCount];
+            this.weights = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int position = next[rows[i]]++;
+                this.targets[position] = columns[i];
+                this.weights[position] = edgeWeights[i];
+            }
+        }
+
+        boolean hasEdges(int stop) {
+            return offsets[stop] != offsets[stop + 1];
+        }
+
+        int[] distances(int source) {
+            int[] distances = new int[offsets.length - 1];
+            Arrays.fill(distances, UNREACHABLE);
+            LongMinHeap heap = new LongMinHeap(1024);
+
+            distances[source] = 0;
+            heap.add(LongMinHeap.pack(0, source));
+
+            while (!heap.isEmpty()) {
+                long element = heap.poll();
+                int distance = LongMinHeap.key(element);
+                int stop = LongMinHeap.value(element);
+
+                if (distance > distances[stop]) {
+                    continue;
+                }
+
+                for (int k = offsets[stop]; k < offsets[stop + 1]; k++) {
+                    long newDistance = (long) distance + weights[k];
+
+                    if (newDistance < distances[targets[k]]) {
+                        distances[targets[k]] = (int) newDistance;
+                        heap.add(LongMinHeap.pack((int) newDistance, targets[k]));
+                    }
+                }
+            }
+
+            return distances;
+        }
+    }
+}
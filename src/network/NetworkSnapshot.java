@@ -0,0 +1,577 @@
+package network;
+
+import tools.IntList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Binary image of a network after updatingNetwork, so that a process can start without parsing the GTFS files.
+// Only the primary data is written, the indices used by the algorithms are rebuilt from it while loading.
+public class NetworkSnapshot {
+
+    public static final int VERSION = 4;
+
+    private static final int MAGIC = 0x50544E53;
+    private static final int END_MAGIC = 0x454E4421;
+    private static final String LOCAL_DATE_FORMAT = "yyyyMMdd";
+
+    // The foot paths depend on the longest walk kept when the network was updated, a snapshot is only reused for the same one
+    public static Path snapshotPath(Path directory, String feed, LocalDate loadDate, int serviceDayCount, int maxWalkingTime) {
+        return directory.resolve(feed.toLowerCase() + "_" + loadDate.format(DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT)) + "_" + serviceDayCount + "d_" +
+                walkingTimeName(maxWalkingTime) + "w.v" + VERSION + ".snapshot");
+    }
+
+
+    private static String walkingTimeName(int maxWalkingTime) {
+        return maxWalkingTime == Integer.MAX_VALUE ? "max" : Integer.toString(maxWalkingTime);
+    }
+
+
+    public static void write(PublicTransitNetwork network, String feed, LocalDate loadDate, Path file) throws IOException {
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        // The snapshot is written next to its final location and moved at the end, so that other processes never see a partial file
+        Path temporaryFile = directory.resolve(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeString(output, feed);
+                writeString(output, loadDate.format(DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT)));
+                output.writeInt(network.getServiceDayCount());
+                output.writeInt(network.getMaxWalkingTime());
+
+                writeStops(output, network);
+                writeFootPaths(output, network);
+                List<Route> routes = writeRoutes(output, network);
+                writeTrips(output, network, routes);
+                writeDestinations(output, network, routes);
+                writeConnections(output, network);
+                writeLandmarks(output, network);
+
+                output.writeInt(END_MAGIC);
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+
+    public static PublicTransitNetwork read(Path file, String feed, LocalDate loadDate, int serviceDayCount, int maxWalkingTime) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput input = new MappedInput(channel);
+
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a network snapshot", file));
+            }
+
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Snapshot version %s is not supported, expecting %s", version, VERSION));
+            }
+
+            String snapshotFeed = input.readString();
+            String snapshotDate = input.readString();
+            int snapshotDayCount = input.readInt();
+            int snapshotWalkingTime = input.readInt();
+            if (!snapshotFeed.equals(feed) || !snapshotDate.equals(loadDate.format(DateTimeFormatter.ofPattern(LOCAL_DATE_FORMAT))) ||
+                    snapshotDayCount != serviceDayCount || snapshotWalkingTime != maxWalkingTime) {
+                throw new IOException(String.format("Snapshot was built for %s on %s for %s days with walks of at most %s seconds",
+                        snapshotFeed, snapshotDate, snapshotDayCount, walkingTimeName(snapshotWalkingTime)));
+            }
+
+            PublicTransitNetwork network = new PublicTransitNetwork();
+            network.setServiceDays(loadDate, serviceDayCount);
+            network.setMaxWalkingTime(maxWalkingTime);
+
+            readStops(input, network);
+            readFootPaths(input, network);
+            List<Route> routes = readRoutes(input, network);
+            List<Trip> trips = readTrips(input, network, routes);
+            readDestinations(input, network, routes, trips);
+            readConnections(input, network, trips);
+            readLandmarks(input, network);
+
+            if (input.readInt() != END_MAGIC) {
+                throw new IOException(String.format("%s is truncated", file));
+            }
+
+            network.addDestinationsToStopPoints();
+            network.addDestinationConnections();
+            network.buildIndices();
+
+            return network;
+        }
+    }
+
+
+    private static void writeStops(DataOutputStream output, PublicTransitNetwork network) throws IOException {
+
+        output.writeInt(network.getStopAreas().size());
+        for (StopArea stopArea : network.getStopAreas()) {
+            writeString(output, stopArea.getId());
+            writeString(output, stopArea.getName());
+            output.writeDouble(stopArea.getLatitude());
+            output.writeDouble(stopArea.getLongitude());
+        }
+
+        output.writeInt(network.getStopPoints().size());
+        for (StopPoint stopPoint : network.getStopPoints()) {
+            writeString(output, stopPoint.getId());
+            writeString(output, stopPoint.getName());
+            output.writeDouble(stopPoint.getLatitude());
+            output.writeDouble(stopPoint.getLongitude());
+            output.writeInt(stopPoint.getParent() == null ? -1 : stopPoint.getParent().getPosition());
+        }
+    }
+
+
+    private static void readStops(MappedInput input, PublicTransitNetwork network) throws IOException {
+
+        int stopAreaCount = input.readInt();
+        for (int i = 0; i < stopAreaCount; i++) {
+            network.getStopAreas().add(new StopArea(input.readString(), i, input.readString(), input.readDouble(), input.readDouble()));
+        }
+
+        int stopPointCount = input.readInt();
+        for (int i = 0; i < stopPointCount; i++) {
+            StopPoint stopPoint = new StopPoint(input.readString(), i, input.readString(), input.readDouble(), input.readDouble());
+            int parent = input.readInt();
+
+            if (parent != -1) {
+                StopArea stopArea = network.getStopAreas().get(parent);
+                stopPoint.setParent(stopArea);
+                stopArea.getChildren().add(stopPoint);
+            }
+
+            network.getStopPoints().add(stopPoint);
+        }
+    }
+
+
+    private static void writeFootPaths(DataOutputStream output, PublicTransitNetwork network) throws IOException {
+
+        FootPathTable footPaths = network.getFootPathTable();
+        int stopPointCount = footPaths.getOffsets().length - 1;
+
+        output.writeInt(stopPointCount);
+        for (int i = 0; i < stopPointCount; i++) {
+            output.writeInt(footPaths.getOffsets()[i + 1] - footPaths.getOffsets()[i]);
+            for (int k = footPaths.getOffsets()[i]; k < footPaths.getOffsets()[i + 1]; k++) {
+                output.writeInt(footPaths.getTargets()[k]);
+                output.writeInt(footPaths.getDurations()[k]);
+            }
+        }
+    }
+
+
+    private static void readFootPaths(MappedInput input, PublicTransitNetwork network) throws IOException {
+
+        int stopPointCount = input.readInt();
+        int[] offsets = new int[stopPointCount + 1];
+        IntList targets = new IntList();
+        IntList durations = new IntList();
+
+        for (int i = 0; i < stopPointCount; i++) {
+            int footPathCount = input.readInt();
+
+            for (int j = 0; j < footPathCount; j++) {
+                targets.add(input.readInt());
+                durations.add(input.readInt());
+            }
+
+            offsets[i + 1] = targets.size();
+        }
+
+        network.setFootPathTable(new FootPathTable(offsets, targets.toArray(), durations.toArray()));
+    }
+
+
+    private static List<Route> writeRoutes(DataOutputStream output, PublicTransitNetwork network) throws IOException {
+
+        List<Route> routes = new ArrayList<>(network.getRoutes().values());
+
+        output.writeInt(routes.size());
+        for (Route route : routes) {
+            writeString(output, route.getId());
+            writeString(output, route.getName());
+            output.writeInt(route.getMode().ordinal());
+        }
+
+        return routes;
+    }
+
+
+    private static List<Route> readRoutes(MappedInput input, PublicTransitNetwork network) throws IOException {
+
+        int routeCount = input.readInt();
+        List<Route> routes = new ArrayList<>(routeCount);
+
+        for (int i = 0; i < routeCount; i++) {
+            Route route = new Route(input.readString(), input.readString(), PublicTransitMode.values()[input.readInt()]);
+            routes.add(route);
+            network.getRoutes().put(route.getId(), route);
+        }
+
+        return routes;
+    }
+
+
+    private static void writeTrips(DataOutputStream output, PublicTransitNetwork network, List<Route> routes) throws IOException {
+
+        Map<Route, Integer> routePositions = positions(routes);
+        List<Trip> trips = network.getTrips().values().stream().sorted(Comparator.comparingInt(Trip::getIndex)).collect(Collectors.toList());
+
+        // The departure and arrival dates are only a few thousand distinct strings, they are written once
+        Map<String, Integer> datePositions = new HashMap<>();
+        List<String> dates = new ArrayList<>();
+        for (Trip trip : trips) {
+            for (Timetable timetable : trip.getTimetables()) {
+                for (String date : Arrays.asList(timetable.getDepartureDate(), timetable.getArrivalDate())) {
+                    if (!datePositions.containsKey(date)) {
+                        datePositions.put(date, dates.size());
+                        dates.add(date);
+                    }
+                }
+            }
+        }
+
+        output.writeInt(dates.size());
+        for (String date : dates) {
+            writeString(output, date);
+        }
+
+        output.writeInt(trips.size());
+        for (Trip trip : trips) {
+            writeString(output, trip.getId());
+            writeString(output, trip.getName());
+            writeString(output, trip.getHeadsign());
+            output.writeInt(trip.getDirectionId());
+            output.writeInt(routePositions.get(trip.getRoute()));
+            output.writeInt(trip.getPosition());
+            output.writeLong(trip.getServiceDays());
+
+            output.writeInt(trip.getTimetables().size());
+            for (Timetable timetable : trip.getTimetables()) {
+                output.writeInt(timetable.getStopPoint() == null ? -1 : timetable.getStopPoint().getPosition());
+                output.writeInt(datePositions.get(timetable.getDepartureDate()));
+                output.writeInt(datePositions.get(timetable.getArrivalDate()));
+                output.writeInt(timetable.getDepartureSeconds());
+                output.writeInt(timetable.getArrivalSeconds());
+                output.writeInt(timetable.getSequence());
+            }
+        }
+    }
+
+
+    private static List<Trip> readTrips(MappedInput input, PublicTransitNetwork network, List<Route> routes) throws IOException {
+
+        int dateCount = input.readInt();
+        String[] dates = new String[dateCount];
+        for (int i = 0; i < dateCount; i++) {
+            dates[i] = input.readString();
+        }
+
+        int tripCount = input.readInt();
+        List<Trip> trips = new ArrayList<>(tripCount);
+
+        for (int i = 0; i < tripCount; i++) {
+            String id = input.readString();
+            String name = input.readString();
+            String headsign = input.readString();
+            int directionId = input.readInt();
+            Route route = routes.get(input.readInt());
+
+            Trip trip = new Trip(id, name, headsign, directionId, route);
+            trip.setPosition(input.readInt());
+            trip.setIndex(i);
+            trip.setServiceDays(input.readLong());
+
+            int timetableCount = input.readInt();
+            for (int j = 0; j < timetableCount; j++) {
+                int stopPointPosition = input.readInt();
+                StopPoint stopPoint = stopPointPosition == -1 ? null : network.getStopPoints().get(stopPointPosition);
+                String departureDate = dates[input.readInt()];
+                String arrivalDate = dates[input.readInt()];
+                int departureSeconds = input.readInt();
+                int arrivalSeconds = input.readInt();
+
+                Timetable timetable = new Timetable(stopPoint, trip, departureDate, arrivalDate, departureSeconds, arrivalSeconds, input.readInt());
+                trip.getTimetables().add(timetable);
+                trip.getDepartureTimes().add(departureSeconds);
+                trip.getArrivalTimes().add(arrivalSeconds);
+            }
+
+            for (int j = 1; j < trip.getTimetables().size(); j++) {
+                trip.getTimetables().get(j).setPreviousTimetable(trip.getTimetables().get(j - 1));
+                trip.getTimetables().get(j - 1).setNextTimetable(trip.getTimetables().get(j));
+            }
+
+            trip.updateTimetables();
+            route.getDirections().get(directionId).add(trip);
+            network.getTrips().put(id, trip);
+            network.getTimetables().addAll(trip.getTimetables());
+            trips.add(trip);
+        }
+
+        // The global list only contains the timetables kept in the trips, which are the only ones the algorithms look at
+        network.getTimetables().sort(PublicTransitNetwork.TIMETABLE_COMPARATOR);
+
+        return trips;
+    }
+
+
+    private static void writeDestinations(DataOutputStream output, PublicTransitNetwork network, List<Route> routes) throws IOException {
+
+        Map<Route, Integer> routePositions = positions(routes);
+
+        output.writeInt(network.getDestinations().size());
+        for (Destination destination : network.getDestinations()) {
+            writeString(output, destination.getId());
+            output.writeInt(routePositions.get(destination.getRoute()));
+            output.writeInt(destination.getDirection());
+
+            output.writeInt(destination.getTrips().size());
+            for (Trip trip : destination.getTrips()) {
+                output.writeInt(trip.getIndex());
+            }
+
+            output.writeInt(destination.getStopPoints().size());
+            for (StopPoint stopPoint : destination.getStopPoints()) {
+                output.writeInt(stopPoint.getPosition());
+            }
+        }
+    }
+
+
+    private static void readDestinations(MappedInput input, PublicTransitNetwork network, List<Route> routes, List<Trip> trips) throws IOException {
+
+        int destinationCount = input.readInt();
+
+        for (int i = 0; i < destinationCount; i++) {
+            String id = input.readString();
+            Route route = routes.get(input.readInt());
+            Destination destination = new Destination(id, route, input.readInt());
+            destination.setPosition(i);
+
+            int tripCount = input.readInt();
+            for (int j = 0; j < tripCount; j++) {
+                Trip trip = trips.get(input.readInt());
+                trip.setDestination(destination);
+                destination.getTrips().add(trip);
+
+                // The trips are written sorted by position, which is the order of their first departure
+                destination.getTimetables().addAll(trip.getTimetables());
+            }
+
+            int stopPointCount = input.readInt();
+            for (int j = 0; j < stopPointCount; j++) {
+                destination.getStopPoints().add(network.getStopPoints().get(input.readInt()));
+            }
+
+            network.getDestinations().add(destination);
+            route.getDestinations().add(destination);
+        }
+    }
+
+
+    private static void writeConnections(DataOutputStream output, PublicTransitNetwork network) throws IOException {
+
+        ConnectionTable connections = network.getConnectionTable();
+
+        output.writeInt(connections.size());
+        writeInts(output, connections.getDeparturePositions());
+        writeInts(output, connections.getArrivalPositions());
+        writeInts(output, connections.getDepartureSeconds());
+        writeInts(output, connections.getArrivalSeconds());
+        writeInts(output, connections.getTripIndices());
+        writeInts(output, connections.getSequences());
+    }
+
+
+    private static void readConnections(MappedInput input, PublicTransitNetwork network, List<Trip> trips) throws IOException {
+
+        int connectionCount = input.readInt();
+        int[] departurePositions = input.readInts(connectionCount);
+        int[] arrivalPositions = input.readInts(connectionCount);
+        int[] departureSeconds = input.readInts(connectionCount);
+        int[] arrivalSeconds = input.readInts(connectionCount);
+        int[] tripIndices = input.readInts(connectionCount);
+        int[] sequences = input.readInts(connectionCount);
+
+        for (int i = 0; i < connectionCount; i++) {
+            Trip trip = trips.get(tripIndices[i]);
+            Connection connection = new Connection(departureSeconds[i],
+                    arrivalSeconds[i],
+                    departurePositions[i],
+                    arrivalPositions[i],
+                    trip.getId(),
+                    tripIndices[i],
+                    sequences[i]);
+            network.getConnections().add(connection);
+            trip.getConnections().add(connection);
+        }
+    }
+
+
+    private static void writeLandmarks(DataOutputStream output, PublicTransitNetwork network) throws IOException {
+
+        Landmarks landmarks = network.getLandmarks();
+
+        if (landmarks == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(landmarks.size());
+        writeInts(output, landmarks.getStops());
+        for (int l = 0; l < landmarks.size(); l++) {
+            writeInts(output, landmarks.getDistancesFrom(l));
+            writeInts(output, landmarks.getDistancesTo(l));
+        }
+    }
+
+
+    private static void readLandmarks(MappedInput input, PublicTransitNetwork network) throws IOException {
+
+        int landmarkCount = input.readInt();
+
+        if (landmarkCount == -1) {
+            return;
+        }
+
+        int stopPointCount = network.getStopPoints().size();
+        int[] stops = input.readInts(landmarkCount);
+        int[][] distancesFrom = new int[landmarkCount][];
+        int[][] distancesTo = new int[landmarkCount][];
+        for (int l = 0; l < landmarkCount; l++) {
+            distancesFrom[l] = input.readInts(stopPointCount);
+            distancesTo[l] = input.readInts(stopPointCount);
+        }
+
+        network.setLandmarks(new Landmarks(stops, distancesFrom, distancesTo));
+    }
+
+
+    private static <T> Map<T, Integer> positions(List<T> list) {
+        Map<T, Integer> positions = new HashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            positions.put(list.get(i), i);
+        }
+        return positions;
+    }
+
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+
+    // Reads the snapshot through memory mapped windows, a single mapping being limited to 2GB
+    private static class MappedInput {
+
+        private static final long WINDOW_SIZE = 1L << 30;
+
+        private FileChannel channel;
+        private long size;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            this.windowStart = position;
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = windowStart + buffer.position();
+
+                if (size - position < bytes) {
+                    throw new IOException("Unexpected end of snapshot");
+                }
+
+                map(position);
+            }
+        }
+
+        int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        double readDouble() throws IOException {
+            ensure(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+
+            if (length == -1) {
+                return null;
+            }
+
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] readInts(int count) throws IOException {
+            int[] values = new int[count];
+            int offset = 0;
+
+            while (offset < count) {
+                ensure(Integer.BYTES);
+                int length = Math.min(count - offset, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(values, offset, length);
+                buffer.position(buffer.position() + length * Integer.BYTES);
+                offset += length;
+            }
+
+            return values;
+        }
+    }
+}
@@ -2,32 +2,41 @@ package network;
 
 import tools.Pair;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class PublicTransitNetwork {
 
     public static final Comparator<Timetable> TIMETABLE_COMPARATOR = Comparator.comparingInt(Timetable::getDepartureSeconds).thenComparingInt(Timetable::getSequence);
+    public static final int MAX_SERVICE_DAYS = Long.SIZE;
     public static final Comparator<Connection> CONNECTION_COMPARATOR = Comparator.comparingInt(Connection::getDepartureSeconds).thenComparingInt(Connection::getSequence);
 
     private List<StopPoint> stopPoints;
     private List<StopArea> stopAreas;
     private List<List<FootPath>> footPaths;
-    private List<List<FootPath>> inboundFootPaths;
+    private FootPathTable footPathTable;
+    private FootPathTable inboundFootPathTable;
+    private int maxWalkingTime = Integer.MAX_VALUE;
     private Map<String, Route> routes;
     private Map<String, Trip> trips;
     private List<TripLight> tripLights;
     private List<Destination> destinations;
     private List<Timetable> timetables;
     private List<Connection> connections;
-    private List<List<Integer>> connectionIndicesFromStop;
-    private Map<Pair<Integer, Integer>, List<Integer>> connectionIndicesFromPair;
     private Connection[] connectionsArray;
+    private ConnectionTable connectionTable;
+    private ConnectionPairIndex connectionPairIndex;
+    private int landmarkCount = 8;
+    private Landmarks landmarks;
+    private LocalDate serviceStartDate;
+    private int serviceDayCount = 1;
+    private long[] tripServiceDays;
 
     public PublicTransitNetwork() {
         this.stopPoints = new ArrayList<>();
         this.stopAreas = new ArrayList<>();
-        this.inboundFootPaths = new ArrayList<>();
         this.footPaths = new ArrayList<>();
         this.routes = new HashMap<>();
         this.trips = new HashMap<>();
@@ -35,7 +44,6 @@ public class PublicTransitNetwork {
         this.destinations = new ArrayList<>();
         this.timetables = new ArrayList<>();
         this.connections = new ArrayList<>();
-        this.connectionIndicesFromStop = new ArrayList<>();
     }
 
     public List<StopPoint> getStopPoints() {
@@ -46,14 +54,33 @@ public class PublicTransitNetwork {
         return stopAreas;
     }
 
-    public List<List<FootPath>> getInboundFootPaths() {
-        return inboundFootPaths;
-    }
-
+    // Foot paths of the transfer file, emptied once the network is updated : the closed foot paths are then in the foot path table
     public List<List<FootPath>> getFootPaths() {
         return footPaths;
     }
 
+    public FootPathTable getFootPathTable() {
+        return footPathTable;
+    }
+
+    void setFootPathTable(FootPathTable footPathTable) {
+        this.footPathTable = footPathTable;
+    }
+
+    // Foot paths by arrival stop point
+    public FootPathTable getInboundFootPathTable() {
+        return inboundFootPathTable;
+    }
+
+    public int getMaxWalkingTime() {
+        return maxWalkingTime;
+    }
+
+    // Longest walk in seconds kept when closing the foot paths of the transfer file, to be set before updating the network
+    public void setMaxWalkingTime(int maxWalkingTime) {
+        this.maxWalkingTime = maxWalkingTime;
+    }
+
     public Map<String, Route> getRoutes() {
         return routes;
     }
@@ -70,10 +97,6 @@ public class PublicTransitNetwork {
         return destinations;
     }
 
-    public Map<Pair<Integer, Integer>, List<Integer>> getConnectionIndicesFromPair() {
-        return connectionIndicesFromPair;
-    }
-
     public List<Timetable> getTimetables() {
         return timetables;
     }
@@ -82,57 +105,83 @@ public class PublicTransitNetwork {
         return connections;
     }
 
-    public List<List<Integer>> getConnectionIndicesFromStop() {
-        return connectionIndicesFromStop;
-    }
-
     public Connection[] getConnectionsArray() {
         return connectionsArray;
     }
 
-    public void updatingNetwork() {
-
-        System.out.println("> Updating network");
+    public ConnectionTable getConnectionTable() {
+        return connectionTable;
+    }
 
-        int counter = 0;
-        int intermediateCounter = 1;
+    public ConnectionPairIndex getConnectionPairIndex() {
+        return connectionPairIndex;
+    }
 
-        while (intermediateCounter != 0) {
-            intermediateCounter = 0;
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
 
-            for (StopPoint stopPoint : this.getStopPoints()) {
+    // Number of landmarks computed when updating the network, 0 disables the lower bounds of the connection scans
+    public void setLandmarkCount(int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+    }
 
-                Set<StopPoint> existingFootPaths = this.getFootPaths().get(stopPoint.getPosition()).stream().map(FootPath::getTo).collect(Collectors.toSet());
-                Set<StopPoint> alreadyAdded = new HashSet<>();
-                alreadyAdded.add(stopPoint);
+    // Lower bounds of the travel times between stop points, null if they were not computed
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
 
-                for (StopPoint intermediateStopPoint : existingFootPaths) {
+    public void computeLandmarks(int count) {
+        this.landmarks = count > 0 ? Landmarks.compute(this, count) : null;
+    }
 
-                    List<FootPath> toAdd = new ArrayList<>();
+    void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
 
-                    for (FootPath footPath : this.getFootPaths().get(intermediateStopPoint.getPosition())) {
-                        if (!existingFootPaths.contains(footPath.getTo()) && !alreadyAdded.contains(footPath.getTo())) {
-                            toAdd.add(new FootPath(stopPoint, footPath.getTo(), (int) stopPoint.distanceTo(footPath.getTo())));
-                            alreadyAdded.add(footPath.getTo());
-                            intermediateCounter++;
-                        }
-                    }
+    public LocalDate getServiceStartDate() {
+        return serviceStartDate;
+    }
 
-                    this.getFootPaths().get(stopPoint.getPosition()).addAll(toAdd);
-                }
-            }
+    public int getServiceDayCount() {
+        return serviceDayCount;
+    }
 
-            counter += intermediateCounter;
+    // The trips of the network run on some of the days starting at the start date, see Trip.getServiceDays
+    public void setServiceDays(LocalDate serviceStartDate, int serviceDayCount) {
+        if (serviceDayCount < 1 || serviceDayCount > MAX_SERVICE_DAYS) {
+            throw new IllegalArgumentException(String.format("The number of service days must be between 1 and %s", MAX_SERVICE_DAYS));
         }
 
-        this.getStopPoints().forEach(e -> this.getInboundFootPaths().add(new ArrayList<>()));
+        this.serviceStartDate = serviceStartDate;
+        this.serviceDayCount = serviceDayCount;
+    }
 
-        for (List<FootPath> footPath : this.getFootPaths()) {
-            for (FootPath path : footPath) {
-                this.getInboundFootPaths().get(path.getTo().getPosition()).add(path);
-            }
+    // Service days of the trips by trip index
+    public long[] getTripServiceDays() {
+        return tripServiceDays;
+    }
+
+    public int getServiceDay(LocalDate date) {
+        long day = serviceStartDate == null ? 0 : ChronoUnit.DAYS.between(serviceStartDate, date);
+
+        if (day < 0 || day >= serviceDayCount) {
+            throw new IllegalArgumentException(String.format("%s is not in the %s service days starting on %s", date, serviceDayCount, serviceStartDate));
         }
 
+        return (int) day;
+    }
+
+    public void updatingNetwork() {
+
+        System.out.println("> Updating network");
+
+        int transferCount = this.getFootPaths().stream().mapToInt(List::size).sum();
+        this.footPathTable = new FootPathClosure(this.getFootPaths(), this.maxWalkingTime).compute();
+        this.getFootPaths().clear();
+
+        int counter = this.footPathTable.size() - transferCount;
+
         System.out.println(String.format("    > Added %s missing foot paths", counter));
 
         this.getTimetables().sort(TIMETABLE_COMPARATOR);
@@ -150,8 +199,10 @@ public class PublicTransitNetwork {
             }
         }
 
+        // The trips are removed too, their timetables would leave a gap at the missing stop point
         for (String trip : trips) {
             this.getTrips().get(trip).getTimetables().forEach(e -> this.getTimetables().remove(e));
+            this.getTrips().remove(trip);
         }
 
         System.out.println(String.format("    > Removed %s incorrect timetables", counter));
@@ -251,13 +302,7 @@ public class PublicTransitNetwork {
 
         System.out.println(String.format("    > Created %s destinations", this.destinations.size()));
 
-        for (Destination destination : this.getDestinations()) {
-            List<Timetable> timetableList = destination.getTrips().get(0).getTimetables();
-            for (int i = 0; i < timetableList.size(); i++) {
-                Timetable timetable = timetableList.get(i);
-                timetable.getStopPoint().getDestinations().add(new Pair<>(destination, i));
-            }
-        }
+        addDestinationsToStopPoints();
 
         System.out.println("    > Added destinations to stop points");
 
@@ -303,12 +348,41 @@ public class PublicTransitNetwork {
             }
         }
 
-        this.connectionsArray = new Connection[this.getConnections().size()];
-        List<Connection> connectionList = this.getConnections();
-        for (int i = 0; i < connectionList.size(); i++) {
-            Connection connection = connectionList.get(i);
-            this.connectionsArray[i] = connection;
+        addDestinationConnections();
+
+        System.out.println("    > Create data structure for CSA");
+
+        for (Trip trip : getTrips().values()) {
+            for (int i = 0; i < trip.getConnections().size(); i++) {
+                Connection connection = trip.getConnections().get(i);
+                connection.setSequence(i);
+            }
+        }
+
+        buildIndices();
+
+        if (this.landmarkCount > 0) {
+            System.out.println("    > Compute landmarks");
+            computeLandmarks(this.landmarkCount);
+        }
+
+        System.out.println("> Updated network successfully\n");
+    }
+
+
+    void addDestinationsToStopPoints() {
+
+        for (Destination destination : this.getDestinations()) {
+            List<Timetable> timetableList = destination.getTrips().get(0).getTimetables();
+            for (int i = 0; i < timetableList.size(); i++) {
+                Timetable timetable = timetableList.get(i);
+                timetable.getStopPoint().getDestinations().add(new Pair<>(destination, i));
+            }
         }
+    }
+
+
+    void addDestinationConnections() {
 
         for (Destination destination : this.getDestinations()) {
             List<Connection> connections = destination.getTrips().stream().sorted(Comparator.comparingInt(e -> e.getConnections().get(0).getDepartureSeconds())).flatMap(f -> f.getConnections().stream()).collect(Collectors.toList());
@@ -317,43 +391,37 @@ public class PublicTransitNetwork {
             destination.getDepartureTimes().addAll(destination.getTrips().stream().sorted(Comparator.comparingInt(e -> e.getTimetables().get(0).getDepartureSeconds())).flatMap(f -> f.getTimetables().stream()).map(Timetable::getDepartureSeconds).collect(Collectors.toList()));
             destination.getArrivalTimes().addAll(destination.getTrips().stream().sorted(Comparator.comparingInt(e -> e.getTimetables().get(0).getDepartureSeconds())).flatMap(f -> f.getTimetables().stream()).map(Timetable::getArrivalSeconds).collect(Collectors.toList()));
         }
+    }
 
-        System.out.println("    > Create data structure for CSA");
 
-        for (Trip trip : this.getTrips().values().stream().sorted(Comparator.comparingInt(Trip::getIndex)).collect(Collectors.toList())) {
-            TripLight tripLight = new TripLight(trip.getId(), trip.getPosition());
-            tripLight.getDepartureTimes().addAll(trip.getDepartureTimes());
-            tripLight.getArrivalTimes().addAll(trip.getArrivalTimes());
-            this.getTripLights().add(tripLight);
-        }
+    // Everything built here only depends on the connections, the trips and the stop points,
+    // so it is also used to restore a network from a snapshot
+    void buildIndices() {
 
-        this.connectionIndicesFromPair = new HashMap<>();
-        for (int i = 0; i < connections.size(); i++) {
-            Connection connection = connections.get(i);
-            Pair<Integer, Integer> pair = new Pair<>(connection.getDeparturePosition(), connection.getArrivalPosition());
-
-            if (connectionIndicesFromPair.containsKey(pair)) {
-                connectionIndicesFromPair.get(pair).add(i);
-            } else {
-                List<Integer> newList = new ArrayList<>();
-                newList.add(i);
-                connectionIndicesFromPair.put(pair, newList);
-            }
+        if (this.footPathTable == null) {
+            this.footPathTable = new FootPathTable(this.getFootPaths());
         }
+        this.inboundFootPathTable = this.footPathTable.reverse();
 
-        stopPoints.forEach(e -> connectionIndicesFromStop.add(new ArrayList<>()));
-        for (int i = 0; i < connections.size(); i++) {
-            Connection connection = connections.get(i);
-            connectionIndicesFromStop.get(connection.getDeparturePosition()).add(i);
+        this.connectionsArray = new Connection[this.getConnections().size()];
+        List<Connection> connectionList = this.getConnections();
+        for (int i = 0; i < connectionList.size(); i++) {
+            Connection connection = connectionList.get(i);
+            this.connectionsArray[i] = connection;
         }
 
-        for (Trip trip : getTrips().values()) {
-            for (int i = 0; i < trip.getConnections().size(); i++) {
-                Connection connection = trip.getConnections().get(i);
-                connection.setSequence(i);
-            }
+        this.tripServiceDays = new long[this.getTrips().size()];
+
+        for (Trip trip : this.getTrips().values().stream().sorted(Comparator.comparingInt(Trip::getIndex)).collect(Collectors.toList())) {
+            this.tripServiceDays[trip.getIndex()] = trip.getServiceDays();
+
+            TripLight tripLight = new TripLight(trip.getId(), trip.getPosition());
+            tripLight.getDepartureTimes().addAll(trip.getDepartureTimes());
+            tripLight.getArrivalTimes().addAll(trip.getArrivalTimes());
+            this.getTripLights().add(tripLight);
         }
 
-        System.out.println("> Updated network successfully\n");
+        this.connectionTable = new ConnectionTable(this.getConnections(), this.getStopPoints().size(), this.getTrips().size());
+        this.connectionPairIndex = new ConnectionPairIndex(this.connectionTable);
     }
 }
@@ -18,6 +18,8 @@ public class Trip {
     private Destination destination;
     private int position;
     private int index;
+    // Bit d is set when the trip runs on the d-th day of the service days of the network
+    private long serviceDays = -1L;
 
     public Trip(String id, String name, String headsign, int directionId, Route route) {
         this.id = id;
@@ -103,4 +105,12 @@ public class Trip {
     public void setIndex(int index) {
         this.index = index;
     }
+
+    public long getServiceDays() {
+        return serviceDays;
+    }
+
+    public void setServiceDays(long serviceDays) {
+        this.serviceDays = serviceDays;
+    }
 }
@@ -0,0 +1,111 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Open addressing map from string keys to values which can be queried with the raw UTF-8 bytes of a csv field,
+// so that ids read from a file are resolved without creating a string for them
+public class ByteKeyMap<V> {
+
+    private byte[][] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int size;
+    private int mask;
+
+    public ByteKeyMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void put(String key, V value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int slot = hash & mask;
+
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], bytes)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = bytes;
+        values[slot] = value;
+        hashes[slot] = hash;
+        size++;
+
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(byte[] buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int slot = hash & mask;
+        int length = end - start;
+
+        while (keys[slot] != null) {
+            byte[] key = keys[slot];
+            if (hashes[slot] == hash && key.length == length && equals(key, buffer, start)) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    public V get(CsvRow row, int column) {
+        return get(row.getBuffer(), row.getStart(column), row.getEnd(column));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+
+        keys = new byte[oldKeys.length * 2][];
+        values = new Object[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static boolean equals(byte[] key, byte[] buffer, int start) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] buffer, int start, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ buffer[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
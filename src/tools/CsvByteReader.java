@@ -0,0 +1,221 @@
+package tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+// Splits a csv file into lines and fields directly on the bytes read from the channel, without creating any string.
+// Quoted fields may contain the separator but not a line break.
+public class CsvByteReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+
+    private ReadableByteChannel channel;
+    private byte separator;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private long compacted;
+    private boolean endOfStream;
+    private int lineNumber;
+    private CsvRow row = new CsvRow();
+
+    public CsvByteReader(ReadableByteChannel channel, char separator) {
+        this(channel, separator, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvByteReader(ReadableByteChannel channel, char separator, int bufferSize) {
+        this.channel = channel;
+        this.separator = (byte) separator;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // Reads the lines already held in memory, the array is used as the buffer without being copied
+    public CsvByteReader(byte[] bytes, int offset, int length, char separator) {
+        this.separator = (byte) separator;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.compacted = -offset;
+        this.endOfStream = true;
+    }
+
+    // Reads the first line and returns the trimmed column names
+    public String[] readHeader() throws IOException {
+        fill();
+
+        // Byte order mark
+        if (limit - position >= 3 && buffer[position] == (byte) 0xEF && buffer[position + 1] == (byte) 0xBB && buffer[position + 2] == (byte) 0xBF) {
+            position += 3;
+        }
+
+        if (!next()) {
+            return null;
+        }
+
+        String[] columnNames = new String[row.size()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = row.getString(i);
+        }
+
+        CsvReader.readColumnNames(columnNames);
+
+        return columnNames;
+    }
+
+    // Moves to the next line, the fields of which are then available through getRow until the following call
+    public boolean next() throws IOException {
+
+        int lineEnd = nextLineEnd();
+
+        if (lineEnd == -1) {
+            return false;
+        }
+
+        int lineStart = position;
+        position = lineEnd == limit ? limit : lineEnd + 1;
+        lineNumber++;
+
+        if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+
+        split(lineStart, lineEnd);
+
+        return true;
+    }
+
+    // Moves past the end of the current line without reading it, used to align on a line when starting in the middle of a file
+    public boolean skipLine() throws IOException {
+
+        int lineEnd = nextLineEnd();
+
+        if (lineEnd == -1) {
+            return false;
+        }
+
+        position = lineEnd == limit ? limit : lineEnd + 1;
+
+        return true;
+    }
+
+    // Number of bytes read from the channel before the next line
+    public long getPosition() {
+        return compacted + position;
+    }
+
+    public CsvRow getRow() {
+        return row;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // Returns the end of the line starting at the current position, reading more bytes if needed, -1 at the end of the stream
+    private int nextLineEnd() throws IOException {
+
+        int lineEnd = findLineEnd();
+
+        while (lineEnd == -1) {
+            if (endOfStream) {
+                return position == limit ? -1 : limit;
+            }
+
+            compact();
+            fill();
+            lineEnd = findLineEnd();
+        }
+
+        return lineEnd;
+    }
+
+    private int findLineEnd() {
+        for (int i = position; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void split(int start, int end) {
+
+        row.reset(buffer, lineNumber);
+
+        int fieldStart = start;
+        int i = start;
+
+        while (true) {
+            if (i < end && buffer[i] == '"') {
+                int contentStart = i + 1;
+                i = contentStart;
+
+                while (i < end) {
+                    if (buffer[i] == '"') {
+                        if (i + 1 < end && buffer[i + 1] == '"') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+
+                row.addField(contentStart, i, true);
+
+                // Skip the closing quote and anything up to the separator
+                while (i < end && buffer[i] != separator) {
+                    i++;
+                }
+            } else {
+                while (i < end && buffer[i] != separator) {
+                    i++;
+                }
+
+                row.addField(fieldStart, i, false);
+            }
+
+            if (i >= end) {
+                return;
+            }
+
+            i++;
+            fieldStart = i;
+        }
+    }
+
+    private void compact() {
+        if (position == 0 && limit == buffer.length) {
+            // A single line does not fit in the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            return;
+        }
+
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        compacted += position;
+        limit -= position;
+        position = 0;
+    }
+
+    private void fill() throws IOException {
+        while (limit < buffer.length && !endOfStream) {
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+
+            if (read == -1) {
+                endOfStream = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+}
@@ -6,8 +6,10 @@ import org.apache.commons.lang3.StringUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +60,38 @@ public class CsvReader {
         }
     }
 
+    // Streams the lines to the visitor, the record is reused from one line to the next and only exposes the requested columns,
+    // by their position in the columns array
+    public static void forEachRow(InputStream csv, char separator, String[] columns, CsvVisitor visitor) throws IOException {
+        try (CsvByteReader reader = new CsvByteReader(Channels.newChannel(csv), separator)) {
+            String[] columnNames = reader.readHeader();
+
+            if (columnNames == null) {
+                return;
+            }
+
+            List<String> names = Arrays.asList(columnNames);
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = names.indexOf(columns[i]);
+            }
+
+            CsvRecord record = new CsvRecord(reader.getRow(), indexes);
+
+            while (reader.next()) {
+                CsvRow row = reader.getRow();
+
+                if (row.isEmptyLine()) {
+                    System.out.println(String.format("Skipping empty line %s", row.getLineNumber()));
+                } else if (row.size() != columnNames.length) {
+                    System.out.println(String.format("Failed to parse line %s, found %s values, expecting %s", row.getLineNumber(), row.size(), columnNames.length));
+                } else {
+                    visitor.visit(record);
+                }
+            }
+        }
+    }
+
     public static void readColumnNames(String[] columnNames) {
         for (int i = 0, k = columnNames.length; i < k; i++) {
             if (convertStringToHex(columnNames[i]).substring(0, 4).equals("feff")) {
@@ -0,0 +1,47 @@
+package tools;
+
+// Line of a csv file seen through the columns requested by the caller, the column indexes are resolved once from the header.
+// The values of a column missing from the file are null.
+public class CsvRecord {
+
+    private CsvRow row;
+    private int[] indexes;
+
+    CsvRecord(CsvRow row, int[] indexes) {
+        this.row = row;
+        this.indexes = indexes;
+    }
+
+    public boolean hasColumn(int column) {
+        return indexes[column] != -1;
+    }
+
+    public boolean isEmpty(int column) {
+        return indexes[column] == -1 || row.isEmpty(indexes[column]);
+    }
+
+    public String getString(int column) {
+        return indexes[column] == -1 ? null : row.getString(indexes[column]);
+    }
+
+    public int getInt(int column) {
+        if (indexes[column] == -1) {
+            throw new NumberFormatException(String.format("Missing column at line %s", row.getLineNumber()));
+        }
+        return row.getInt(indexes[column]);
+    }
+
+    public double getDouble(int column) {
+        return Double.parseDouble(getString(column));
+    }
+
+    // Compares the value without creating a string
+    public boolean equals(int column, char value) {
+        int index = indexes[column];
+        return index != -1 && row.getEnd(index) - row.getStart(index) == 1 && row.getBuffer()[row.getStart(index)] == value;
+    }
+
+    public int getLineNumber() {
+        return row.getLineNumber();
+    }
+}
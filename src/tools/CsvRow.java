@@ -0,0 +1,99 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+
+// View over the current line of a CsvByteReader, the buffer and the field bounds are reused from one line to the next
+public class CsvRow {
+
+    private byte[] buffer;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private int size;
+    private int lineNumber;
+
+    void reset(byte[] buffer, int lineNumber) {
+        this.buffer = buffer;
+        this.lineNumber = lineNumber;
+        this.size = 0;
+    }
+
+    void addField(int start, int end, boolean isQuoted) {
+        if (size == starts.length) {
+            int length = size * 2;
+            starts = java.util.Arrays.copyOf(starts, length);
+            ends = java.util.Arrays.copyOf(ends, length);
+            quoted = java.util.Arrays.copyOf(quoted, length);
+        }
+
+        starts[size] = start;
+        ends[size] = end;
+        quoted[size] = isQuoted;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getStart(int column) {
+        return starts[column];
+    }
+
+    public int getEnd(int column) {
+        return ends[column];
+    }
+
+    public boolean isEmpty(int column) {
+        return starts[column] == ends[column];
+    }
+
+    public boolean isEmptyLine() {
+        return size == 1 && isEmpty(0);
+    }
+
+    public String getString(int column) {
+        String value = new String(buffer, starts[column], ends[column] - starts[column], StandardCharsets.UTF_8);
+        return quoted[column] ? value.replace("\"\"", "\"") : value;
+    }
+
+    public int getInt(int column) {
+        int start = starts[column];
+        int end = ends[column];
+
+        while (start < end && buffer[start] == ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+
+        boolean negative = start < end && buffer[start] == '-';
+        if (negative || start < end && buffer[start] == '+') {
+            start++;
+        }
+
+        if (start == end) {
+            throw new NumberFormatException(String.format("Empty number at line %s", lineNumber));
+        }
+
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(String.format("Invalid number %s at line %s", getString(column), lineNumber));
+            }
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+}
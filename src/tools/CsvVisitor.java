@@ -0,0 +1,6 @@
+package tools;
+
+public interface CsvVisitor {
+
+    void visit(CsvRecord record);
+}
@@ -0,0 +1,55 @@
+package tools;
+
+import java.util.Arrays;
+
+// Set of indices in [0, capacity) stamped with the current epoch, so that clearing it does not walk the whole array.
+// Indices out of the capacity are never contained.
+public class IndexSet {
+
+    private int[] stamps;
+    private int epoch = 1;
+    private int size;
+
+    public IndexSet(int capacity) {
+        this.stamps = new int[capacity];
+    }
+
+    public void add(int index) {
+        if (stamps[index] != epoch) {
+            stamps[index] = epoch;
+            size++;
+        }
+    }
+
+    public void addAll(IntList indices) {
+        for (int i = 0; i < indices.size(); i++) {
+            add(indices.get(i));
+        }
+    }
+
+    public boolean contains(int index) {
+        return index >= 0 && index < stamps.length && stamps[index] == epoch;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return stamps.length;
+    }
+
+    public void clear() {
+        size = 0;
+        epoch++;
+
+        if (epoch == 0) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+}
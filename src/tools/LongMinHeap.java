@@ -0,0 +1,86 @@
+package tools;
+
+import java.util.Arrays;
+
+// Binary min heap of primitive longs, used with a key packed in the high bits and a value in the low bits
+public class LongMinHeap {
+
+    private long[] heap;
+    private int size;
+
+    public LongMinHeap(int capacity) {
+        this.heap = new long[Math.max(capacity, 16)];
+    }
+
+    public static long pack(int key, int value) {
+        return ((long) key << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    public static int key(long element) {
+        return (int) (element >>> 32);
+    }
+
+    public static int value(long element) {
+        return (int) element;
+    }
+
+    public void add(long element) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= element) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = element;
+    }
+
+    public long peek() {
+        return heap[0];
+    }
+
+    public long poll() {
+        long result = heap[0];
+        long last = heap[--size];
+        int i = 0;
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+
+        if (size > 0) {
+            heap[i] = last;
+        }
+
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}